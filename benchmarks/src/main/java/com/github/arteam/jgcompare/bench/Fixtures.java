@@ -0,0 +1,87 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.domain.Team;
+import com.github.arteam.jgcompare.domain.TeamDivision;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Deterministic inputs shared by the benchmarks. Every generator produces the same data for the
+ * same size, so the Guava and the Stream variant of an idiom always see identical inputs.
+ */
+final class Fixtures {
+
+    static final String[] DIVISIONS = {"Pacific", "Atlantic", "Metropolitan", "Central"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * Words of a varying length: "0", "1", ..., "10", "11", ...
+     */
+    static ImmutableList<String> words(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(Integer::toString)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Lines of up to three space separated numbers
+     */
+    static ImmutableList<String> lines(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> switch (i % 3) {
+                    case 0 -> Integer.toString(i);
+                    case 1 -> i + " " + (i + 1);
+                    default -> i + " " + (i + 1) + " " + (i + 2);
+                })
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    static ImmutableList<Team> teams(int size) {
+        return LongStream.range(0, size)
+                .mapToObj(id -> new Team(id, "Team " + id))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    static ImmutableList<TeamDivision> teamDivisions(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> new TeamDivision("Team " + i, DIVISIONS[i % DIVISIONS.length]))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Map from an id to a name of a team, like {@code 12 -> "Chicago Blackhawks"}
+     */
+    static ImmutableMap<Integer, String> teamNames(int size) {
+        return IntStream.range(0, size)
+                .boxed()
+                .collect(ImmutableMap.toImmutableMap(i -> i, i -> "City" + i + " Team" + i));
+    }
+
+    /**
+     * Every second number from {@code from} to {@code from + 2 * size}
+     */
+    static ImmutableSet<Integer> evenSet(int from, int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> from + 2 * i)
+                .collect(ImmutableSet.toImmutableSet());
+    }
+
+    static ImmutableSortedSet<Integer> sortedKeys(Map<Integer, ?> map, int step) {
+        return map.keySet().stream()
+                .filter(k -> k % step == 0)
+                .collect(ImmutableSortedSet.toImmutableSortedSet(Integer::compare));
+    }
+
+    static <T> T middle(List<T> list) {
+        return list.get(list.size() / 2);
+    }
+}
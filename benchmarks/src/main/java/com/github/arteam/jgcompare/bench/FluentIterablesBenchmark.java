@@ -0,0 +1,86 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.util.Tokenizer;
+import com.google.common.base.Splitter;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableListMultimap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Guava {@link FluentIterable} against the Stream API, one pair of benchmarks per case
+ * of {@code FluentIterablesTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FluentIterablesBenchmark {
+
+    private static final Splitter SPLITTER = Splitter.on(" ");
+    private static final Tokenizer TOKENIZER = Tokenizer.on(' ');
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    List<String> source;
+
+    @Setup
+    public void setUp() {
+        source = Fixtures.lines(size);
+    }
+
+    @Benchmark
+    public List<Integer> guavaTransformAndConcat() {
+        return FluentIterable.from(source)
+                .transformAndConcat(SPLITTER::split)
+                .transform(Integer::parseInt)
+                .toList();
+    }
+
+    @Benchmark
+    public List<Integer> streamTransformAndConcat() {
+        return source.stream()
+                .flatMap(s -> Stream.of(s.split(" ")))
+                .map(Integer::parseInt)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public int[] tokenizerTransformAndConcat() {
+        return source.stream()
+                .flatMapToInt(TOKENIZER::splitToInts)
+                .toArray();
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<String, String> guavaIndex() {
+        return FluentIterable.from(source)
+                .transformAndConcat(SPLITTER::split)
+                .index(s -> s.substring(0, 1));
+    }
+
+    @Benchmark
+    public Map<String, List<String>> streamIndex() {
+        return source.stream()
+                .flatMap(s -> Stream.of(s.split(" ")))
+                .collect(Collectors.groupingBy(s -> s.substring(0, 1)));
+    }
+}
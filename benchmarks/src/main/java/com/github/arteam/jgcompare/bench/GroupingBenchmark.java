@@ -0,0 +1,74 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.domain.TeamDivision;
+import com.github.arteam.jgcompare.util.StripedGrouping;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimaps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel grouping by a high-cardinality key: the stock collectors against the striped engine.
+ * Every key has four elements on average, like events grouped by a session id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class GroupingBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    List<TeamDivision> events;
+
+    @Setup
+    public void setUp() {
+        int sessions = Math.max(1, size / 4);
+        events = IntStream.range(0, size)
+                .mapToObj(i -> new TeamDivision("Event " + i, "Session " + (i * 31L) % sessions))
+                .toList();
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<String, TeamDivision> guavaIndex() {
+        return Multimaps.index(events, TeamDivision::division);
+    }
+
+    @Benchmark
+    public Map<String, List<TeamDivision>> streamGroupingBy() {
+        return events.parallelStream().collect(Collectors.groupingBy(TeamDivision::division));
+    }
+
+    @Benchmark
+    public Map<String, List<TeamDivision>> streamGroupingByConcurrent() {
+        return events.parallelStream().collect(Collectors.groupingByConcurrent(TeamDivision::division));
+    }
+
+    @Benchmark
+    public Map<String, List<TeamDivision>> stripedGroupingBy() {
+        return StripedGrouping.groupingBy(events.parallelStream(), TeamDivision::division);
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<String, TeamDivision> stripedIndex() {
+        return StripedGrouping.index(events.parallelStream(), TeamDivision::division);
+    }
+}
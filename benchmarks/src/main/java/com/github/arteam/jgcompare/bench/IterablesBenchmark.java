@@ -0,0 +1,514 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.util.BoundedCollectors;
+import com.github.arteam.jgcompare.util.BulkMutations;
+import com.github.arteam.jgcompare.util.Frequencies;
+import com.github.arteam.jgcompare.util.JoiningWriter;
+import com.github.arteam.jgcompare.util.Pipeline;
+import com.github.arteam.jgcompare.util.StreamUtils;
+import com.github.arteam.jgcompare.util.metrics.Instrumentation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Guava {@link Iterables} against the Stream API, one pair of benchmarks per case
+ * of {@code IterablesTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class IterablesBenchmark {
+
+    private static final JoiningWriter JOINING = JoiningWriter.joining(", ", "[", "]");
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    List<String> source;
+    List<String> addition;
+    List<String> removed;
+    String middle;
+
+    @Setup
+    public void setUp() {
+        source = new ArrayList<>(Fixtures.words(size));
+        addition = ImmutableList.of("ger", "d", "fm");
+        removed = ImmutableList.of("1", "5", "7");
+        middle = Fixtures.middle(source);
+    }
+
+    @Benchmark
+    public List<String> guavaAddAll() {
+        List<String> sink = Lists.newArrayList("grey", "two", "vertex");
+        Iterables.addAll(sink, source);
+        return sink;
+    }
+
+    @Benchmark
+    public List<String> streamAddAll() {
+        List<String> sink = Lists.newArrayList("grey", "two", "vertex");
+        source.stream().forEachOrdered(sink::add);
+        return sink;
+    }
+
+    @Benchmark
+    public boolean guavaAll() {
+        return Iterables.all(source, it -> !it.isEmpty());
+    }
+
+    @Benchmark
+    public boolean streamAll() {
+        return source.stream().allMatch(it -> !it.isEmpty());
+    }
+
+    @Benchmark
+    public boolean guavaAny() {
+        return Iterables.any(source, it -> it.length() > 100);
+    }
+
+    @Benchmark
+    public boolean streamAny() {
+        return source.stream().anyMatch(it -> it.length() > 100);
+    }
+
+    @Benchmark
+    public List<String> guavaConcat() {
+        return ImmutableList.copyOf(Iterables.concat(source, addition));
+    }
+
+    @Benchmark
+    public List<String> streamConcat() {
+        return Stream.concat(source.stream(), addition.stream()).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public boolean guavaContains() {
+        return Iterables.contains(source, middle);
+    }
+
+    @Benchmark
+    public boolean streamContains() {
+        return source.stream().anyMatch(s -> s.equals(middle));
+    }
+
+    @Benchmark
+    public List<String> guavaCycle() {
+        Iterator<String> iterator = Iterables.cycle(source).iterator();
+        List<String> cycled = new ArrayList<>(2 * size);
+        for (int i = 0; i < 2 * size; i++) {
+            cycled.add(iterator.next());
+        }
+        return cycled;
+    }
+
+    @Benchmark
+    public List<String> streamCycle() {
+        String[] streamAsArray = source.stream().toArray(String[]::new);
+        return IntStream.iterate(0, i -> (i + 1) % streamAsArray.length)
+                .mapToObj(i -> streamAsArray[i])
+                .limit(2L * size)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> sizedCycle() {
+        return StreamUtils.cycle(source, 2L * size).toList();
+    }
+
+    @Benchmark
+    public String[] cycleToArray() {
+        return StreamUtils.cycleToArray(source, 2 * size, String[]::new);
+    }
+
+    @Benchmark
+    public List<String> guavaFilter() {
+        return ImmutableList.copyOf(Iterables.filter(Iterables.filter(source, s -> s.length() > 1),
+                s -> s.startsWith("9")));
+    }
+
+    @Benchmark
+    public List<String> streamFilter() {
+        return source.stream()
+                .filter(s -> s.length() > 1)
+                .filter(s -> s.startsWith("9"))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> pipelineFilter() {
+        return Pipeline.from(source)
+                .filter(s -> s.length() > 1)
+                .filter(s -> s.startsWith("9"))
+                .toList();
+    }
+
+    /**
+     * Instrumentation is off unless {@code -Djgcompare.instrumentation=true} is passed to the fork
+     */
+    @Benchmark
+    public List<String> instrumentedStreamFilter() {
+        return source.stream()
+                .filter(Instrumentation.filter("longWords", s -> s.length() > 1))
+                .filter(Instrumentation.filter("startsWith9", s -> s.startsWith("9")))
+                .collect(Instrumentation.collector("toList", Collectors.toList()));
+    }
+
+    @Benchmark
+    public String guavaFind() {
+        return Iterables.find(source, it -> it.equals(middle));
+    }
+
+    @Benchmark
+    public String streamFind() {
+        return source.stream().filter(it -> it.equals(middle)).findAny().get();
+    }
+
+    @Benchmark
+    public String guavaFindDefaultValue() {
+        return Iterables.find(source, it -> it.length() == 100, "abcd");
+    }
+
+    @Benchmark
+    public String streamFindDefaultValue() {
+        return source.stream().filter(it -> it.length() == 100).findAny().orElse("abcd");
+    }
+
+    @Benchmark
+    public int guavaFrequency() {
+        return Iterables.frequency(source, middle);
+    }
+
+    @Benchmark
+    public long streamFrequency() {
+        return source.stream().filter(s -> s.equals(middle)).count();
+    }
+
+    @Benchmark
+    public Map<String, Long> streamFrequencies() {
+        return source.stream().collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    @Benchmark
+    public Frequencies<String> frequencies() {
+        return source.stream().collect(Frequencies.counting());
+    }
+
+    @Benchmark
+    public Frequencies<String> parallelFrequencies() {
+        return source.parallelStream().collect(Frequencies.counting());
+    }
+
+    @Benchmark
+    public String guavaGetFirst() {
+        return Iterables.getFirst(source, "");
+    }
+
+    @Benchmark
+    public String streamGetFirst() {
+        return source.stream().findFirst().orElse("");
+    }
+
+    @Benchmark
+    public String guavaGetLast() {
+        return Iterables.getLast(source, "");
+    }
+
+    @Benchmark
+    public String streamGetLast() {
+        return source.stream().reduce((l, r) -> r).get();
+    }
+
+    @Benchmark
+    public Optional<String> boundedGetLast() {
+        return BoundedCollectors.last(source.stream());
+    }
+
+    @Benchmark
+    public List<String> guavaTop100() {
+        return Ordering.natural().greatestOf(source, 100);
+    }
+
+    @Benchmark
+    public List<String> streamTop100() {
+        return source.stream().sorted(Comparator.reverseOrder()).limit(100).toList();
+    }
+
+    @Benchmark
+    public List<String> boundedTop100() {
+        return source.stream().collect(BoundedCollectors.topK(100, Comparator.naturalOrder()));
+    }
+
+    @Benchmark
+    public String guavaGetOnlyElement() {
+        return Iterables.getOnlyElement(Iterables.filter(source, s -> s.equals(middle)));
+    }
+
+    @Benchmark
+    public String streamGetOnlyElement() {
+        return source.stream().filter(s -> s.equals(middle)).findFirst().get();
+    }
+
+    @Benchmark
+    public String streamFindOnly() {
+        return StreamUtils.findOnly(source.stream().filter(s -> s.equals(middle))).orElseThrow();
+    }
+
+    @Benchmark
+    public String parallelFindOnly() {
+        return StreamUtils.findOnly(source.parallelStream().filter(s -> s.equals(middle))).orElseThrow();
+    }
+
+    @Benchmark
+    public String guavaGetOnlyElementWithDefault() {
+        return Iterables.getOnlyElement(Iterables.filter(source, s -> s.length() == 100), "mann");
+    }
+
+    @Benchmark
+    public String streamGetOnlyElementWithDefault() {
+        return source.stream().filter(s -> s.length() == 100).findFirst().orElse("mann");
+    }
+
+    @Benchmark
+    public int guavaIndexOf() {
+        return Iterables.indexOf(source, it -> it.equals(middle));
+    }
+
+    @Benchmark
+    public Optional<Integer> streamIndexOf() {
+        return StreamUtils.withIndex(source.stream())
+                .filter(e -> e.element().equals(middle))
+                .map(e -> e.index())
+                .findFirst();
+    }
+
+    @Benchmark
+    public boolean guavaIsEmpty() {
+        return Iterables.isEmpty(source);
+    }
+
+    @Benchmark
+    public boolean streamIsEmpty() {
+        return source.stream().noneMatch(s -> true);
+    }
+
+    @Benchmark
+    public List<String> guavaLimit() {
+        return Lists.newArrayList(Iterables.limit(source, size / 2));
+    }
+
+    @Benchmark
+    public List<String> streamLimit() {
+        return source.stream().limit(size / 2).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<List<String>> guavaPartition() {
+        return Lists.newArrayList(Iterables.partition(source, 3));
+    }
+
+    @Benchmark
+    public List<List<String>> streamPartition() {
+        return StreamUtils.withIndex(source.stream())
+                .collect(ArrayList::new, (lists, el) -> {
+                    List<String> part;
+                    if (el.index() % 3 == 0) {
+                        part = new ArrayList<>();
+                        lists.add(part);
+                    } else {
+                        part = lists.get(lists.size() - 1);
+                    }
+                    part.add(el.element());
+                }, ArrayList::addAll);
+    }
+
+    @Benchmark
+    public List<List<String>> streamChunkedPartition() {
+        return StreamUtils.chunked(source.stream(), 3).toList();
+    }
+
+    @Benchmark
+    public List<List<String>> guavaPaddedPartition() {
+        return Lists.newArrayList(Iterables.paddedPartition(source, 3));
+    }
+
+    @Benchmark
+    public List<List<String>> streamPaddedPartition() {
+        return new ArrayList<>(StreamUtils.withIndex(source.stream())
+                .collect(Collectors.collectingAndThen(Collectors.groupingBy(el -> el.index() / 3,
+                        Collectors.mapping(el -> el.element(), Collectors.toList())), map -> {
+                    List<String> partition = map.get(map.size() - 1);
+                    int i = partition.size();
+                    while (i++ < 3) {
+                        partition.add(null);
+                    }
+                    return map;
+                })).values());
+    }
+
+    @Benchmark
+    public List<List<String>> streamPaddedChunkedPartition() {
+        return StreamUtils.paddedChunked(source.stream(), 3, null).toList();
+    }
+
+    @Benchmark
+    public List<String> guavaRemoveAll() {
+        List<String> copy = new ArrayList<>(source);
+        Iterables.removeAll(copy, removed);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> streamRemoveAll() {
+        return source.stream()
+                .filter(s -> !removed.contains(s))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> bulkRemoveAll() {
+        List<String> copy = new ArrayList<>(source);
+        BulkMutations.removeAll(copy, removed);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> guavaRemoveIf() {
+        List<String> copy = new ArrayList<>(source);
+        Iterables.removeIf(copy, it -> it.length() < 3);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> streamRemoveIf() {
+        return source.stream()
+                .filter(((Predicate<String>) it -> it.length() < 3).negate())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> bulkRemoveIf() {
+        List<String> copy = new ArrayList<>(source);
+        BulkMutations.removeIf(copy, it -> it.length() < 3);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> guavaRetainAll() {
+        List<String> copy = new ArrayList<>(source);
+        Iterables.retainAll(copy, removed);
+        return copy;
+    }
+
+    @Benchmark
+    public List<String> streamRetainAll() {
+        return source.stream()
+                .filter(s -> removed.contains(s))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> bulkRetainAll() {
+        List<String> copy = new ArrayList<>(source);
+        BulkMutations.retainAll(copy, removed);
+        return copy;
+    }
+
+    @Benchmark
+    public int guavaSize() {
+        return Iterables.size(source);
+    }
+
+    @Benchmark
+    public long streamSize() {
+        return source.stream().count();
+    }
+
+    @Benchmark
+    public List<String> guavaSkip() {
+        return Lists.newArrayList(Iterables.skip(source, size / 2));
+    }
+
+    @Benchmark
+    public List<String> streamSkip() {
+        return source.stream().skip(size / 2).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public String[] guavaToArray() {
+        return Iterables.toArray(source, String.class);
+    }
+
+    @Benchmark
+    public String[] streamToArray() {
+        return source.stream().toArray(String[]::new);
+    }
+
+    @Benchmark
+    public List<Integer> guavaTransform() {
+        return Lists.newArrayList(Iterables.transform(source, String::length));
+    }
+
+    @Benchmark
+    public List<Integer> streamTransform() {
+        return source.stream().map(String::length).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public String guavaTryFind() {
+        return Iterables.tryFind(source, it -> it.length() == 100).or("abcd");
+    }
+
+    @Benchmark
+    public String streamTryFind() {
+        return source.stream().filter(it -> it.length() == 100).findAny().orElse("abcd");
+    }
+
+    @Benchmark
+    public String guavaToString() {
+        return Iterables.toString(source);
+    }
+
+    @Benchmark
+    public String streamToString() {
+        return source.stream().collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    @Benchmark
+    public String joiningWriterToString() {
+        return JOINING.toString(source.stream());
+    }
+
+    @Benchmark
+    public String parallelJoiningWriterToString() {
+        return JOINING.toString(source.parallelStream());
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.domain.Team;
+import com.github.arteam.jgcompare.util.DerivedViewCache;
+import com.github.arteam.jgcompare.util.LongObjectMap;
+import com.github.arteam.jgcompare.util.MapDifferences;
+import com.github.arteam.jgcompare.util.MapFilters;
+import com.github.arteam.jgcompare.util.MemoizingMap;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Guava {@link Maps} against the Stream API, one pair of benchmarks per case of {@code MapsTest}.
+ * <p>
+ * Guava returns lazy views for most of these operations, so the views are copied into
+ * an {@link ImmutableMap} to make both sides pay for producing every entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class MapsBenchmark {
+
+    private static final Splitter WHITESPACE_SPLITTER = Splitter.on(" ");
+
+    private static String getLastWord(String text) {
+        return Iterables.getLast(WHITESPACE_SPLITTER.split(text));
+    }
+
+    private static <K, V> Collector<Map.Entry<K, V>, ?, Map<K, V>> toMap() {
+        return Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    List<Team> teamList;
+    Map<Integer, String> teams;
+    Map<Integer, String> halfOfTeams;
+    ImmutableSortedMap<Integer, String> sortedTeams;
+    ImmutableSortedMap<Integer, String> sortedHalfOfTeams;
+    NavigableSet<Integer> sortedKeys;
+    Set<Integer> keys;
+    DerivedViewCache.View<List<Team>, Map<Long, Team>> cachedById;
+
+    @Setup
+    public void setUp() {
+        teamList = Fixtures.teams(size);
+        teams = Fixtures.teamNames(size);
+        halfOfTeams = ImmutableMap.copyOf(Maps.filterKeys(teams, k -> k % 2 == 0));
+        sortedTeams = ImmutableSortedMap.copyOf(teams);
+        sortedHalfOfTeams = ImmutableSortedMap.copyOf(halfOfTeams);
+        sortedKeys = Fixtures.sortedKeys(teams, 3);
+        keys = ImmutableSet.copyOf(sortedKeys);
+        cachedById = new DerivedViewCache(Long.MAX_VALUE).view(list -> Maps.uniqueIndex(list, Team::id));
+    }
+
+    @Benchmark
+    public Map<Long, Team> guavaUniqueIndex() {
+        return Maps.uniqueIndex(teamList, Team::id);
+    }
+
+    @Benchmark
+    public Map<Long, Team> streamUniqueIndex() {
+        return teamList.stream().collect(Collectors.toMap(Team::id, Function.identity()));
+    }
+
+    @Benchmark
+    public LongObjectMap<Team> streamLongObjectUniqueIndex() {
+        return LongObjectMap.uniqueIndex(teamList.stream(), Team::id);
+    }
+
+    @Benchmark
+    public Map<Long, Team> cachedUniqueIndex() {
+        return cachedById.get(teamList);
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaAsNavigableMap() {
+        return ImmutableSortedMap.copyOfSorted(Maps.asMap(sortedKeys, teams::get));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamAsNavigableMap() {
+        return sortedKeys.stream()
+                .collect(Collectors.toMap(Function.identity(), teams::get,
+                        (s1, s2) -> {
+                            throw new IllegalArgumentException("Two values for the same key");
+                        },
+                        TreeMap::new));
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaSetAsMap() {
+        return ImmutableMap.copyOf(Maps.asMap(keys, teams::get));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamSetAsMap() {
+        return keys.stream().collect(Collectors.toMap(Function.identity(), teams::get));
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaDifference() {
+        return Maps.difference(teams, halfOfTeams).entriesOnlyOnLeft();
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamDifference() {
+        return teams.entrySet().stream()
+                .filter(e -> !halfOfTeams.containsKey(e.getKey()))
+                .collect(toMap());
+    }
+
+    @Benchmark
+    public long streamAllDifferences() {
+        return MapDifferences.stream(teams, halfOfTeams).count();
+    }
+
+    @Benchmark
+    public long sortedMergeAllDifferences() {
+        return MapDifferences.stream(sortedTeams, sortedHalfOfTeams).parallel().count();
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaFilterEntries() {
+        return ImmutableMap.copyOf(Maps.filterEntries(teams, e -> e.getKey() > 20 && e.getValue().startsWith("City1")));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamFilterEntries() {
+        return teams.entrySet().stream()
+                .filter(e -> e.getKey() > 20 && e.getValue().startsWith("City1"))
+                .collect(toMap());
+    }
+
+    @Benchmark
+    public Map<Integer, String> mapFilterEntries() {
+        return MapFilters.filterEntries(teams, (k, v) -> k > 20 && v.startsWith("City1"));
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaFilterKeys() {
+        return ImmutableMap.copyOf(Maps.filterKeys(teams, k -> k > size / 2));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamFilterKeys() {
+        return teams.entrySet().stream()
+                .filter(e -> e.getKey() > size / 2)
+                .collect(toMap());
+    }
+
+    @Benchmark
+    public Map<Integer, String> mapFilterIntKeys() {
+        return MapFilters.filterIntKeys(teams, k -> k > size / 2);
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaFilterValues() {
+        return ImmutableMap.copyOf(Maps.filterValues(teams, v -> getLastWord(v).startsWith("Team1")));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamFilterValues() {
+        return teams.entrySet().stream()
+                .filter(e -> getLastWord(e.getValue()).startsWith("Team1"))
+                .collect(toMap());
+    }
+
+    @Benchmark
+    public Map<Integer, String> mapFilterValues() {
+        return MapFilters.filterValues(teams, v -> getLastWord(v).startsWith("Team1"));
+    }
+
+    @Benchmark
+    public Map<Integer, String> guavaTransformValues() {
+        return ImmutableMap.copyOf(Maps.transformValues(teams, MapsBenchmark::getLastWord));
+    }
+
+    @Benchmark
+    public Map<Integer, String> streamTransformValues() {
+        return teams.entrySet().stream()
+                .map(e -> new AbstractMap.SimpleEntry<>(e.getKey(), getLastWord(e.getValue())))
+                .collect(toMap());
+    }
+
+    @Benchmark
+    public Map<Integer, String> memoizingTransformValues() {
+        return MemoizingMap.transformValues(teams, MapsBenchmark::getLastWord).materialize();
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.domain.TeamDivision;
+import com.github.arteam.jgcompare.util.ColumnarMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimaps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Guava {@link Multimaps} against the Stream API, one pair of benchmarks per case
+ * of {@code MultimapsTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class MultimapsBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    List<TeamDivision> teams;
+    Map<Integer, String> topTeams;
+
+    @Setup
+    public void setUp() {
+        teams = Fixtures.teamDivisions(size);
+        topTeams = Fixtures.teamNames(size);
+    }
+
+    @Benchmark
+    public ImmutableListMultimap<String, TeamDivision> guavaIndex() {
+        return Multimaps.index(teams, TeamDivision::division);
+    }
+
+    @Benchmark
+    public Map<String, List<TeamDivision>> streamIndex() {
+        return teams.stream().collect(Collectors.groupingBy(TeamDivision::division));
+    }
+
+    @Benchmark
+    public ColumnarMultimap<String, TeamDivision> columnarIndex() {
+        return teams.stream().collect(ColumnarMultimap.index(TeamDivision::division));
+    }
+
+    @Benchmark
+    public ImmutableSetMultimap<Integer, String> guavaFromMap() {
+        return ImmutableSetMultimap.copyOf(Multimaps.forMap(topTeams));
+    }
+
+    @Benchmark
+    public Map<Integer, List<String>> streamFromMap() {
+        return topTeams.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getKey,
+                        Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.arteam.jgcompare.bench;
+
+import com.github.arteam.jgcompare.util.CartesianProduct;
+import com.github.arteam.jgcompare.util.SetViews;
+import com.github.arteam.jgcompare.util.SortedSets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Guava {@link Sets} against the Stream API, one pair of benchmarks per case of {@code SetsTest}.
+ * <p>
+ * The two sets overlap by a half: {@code first} holds even numbers from 0 and {@code second}
+ * holds even numbers from {@code size}. The Cartesian product uses two sets of
+ * {@code sqrt(size)} elements, so it has roughly {@code size} tuples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SetsBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    int size;
+
+    Set<Integer> first;
+    Set<Integer> second;
+    Set<Integer> sortedFirst;
+    Set<Integer> sortedSecond;
+    Set<Integer> productFirst;
+    Set<Integer> productSecond;
+
+    @Setup
+    public void setUp() {
+        first = Fixtures.evenSet(0, size);
+        second = Fixtures.evenSet(size, size);
+        sortedFirst = ImmutableSortedSet.copyOf(first);
+        sortedSecond = ImmutableSortedSet.copyOf(second);
+        int side = (int) Math.ceil(Math.sqrt(size));
+        productFirst = Fixtures.evenSet(0, side);
+        productSecond = Fixtures.evenSet(1, side);
+    }
+
+    @Benchmark
+    public Set<List<Integer>> guavaCartesianProduct() {
+        return ImmutableSet.copyOf(Sets.cartesianProduct(productFirst, productSecond));
+    }
+
+    @Benchmark
+    public Set<List<Integer>> streamCartesianProduct() {
+        return productFirst.stream()
+                .flatMap(s1 -> productSecond.stream().map(s2 -> Arrays.asList(s1, s2)))
+                .collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public Set<List<Integer>> lazyCartesianProduct() {
+        return CartesianProduct.of(productFirst, productSecond).stream().collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public Set<Integer> guavaDifference() {
+        return ImmutableSet.copyOf(Sets.difference(first, second));
+    }
+
+    @Benchmark
+    public Set<Integer> setViewsDifference() {
+        return SetViews.difference(first, second).immutableCopy();
+    }
+
+    @Benchmark
+    public List<Integer> sortedMergeDifference() {
+        return SortedSets.difference(sortedFirst, sortedSecond).toList();
+    }
+
+    @Benchmark
+    public Set<Integer> streamDifference() {
+        return first.stream()
+                .filter(s -> !second.contains(s))
+                .collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public Set<Integer> guavaSymmetricDifference() {
+        return ImmutableSet.copyOf(Sets.symmetricDifference(first, second));
+    }
+
+    @Benchmark
+    public Set<Integer> setViewsSymmetricDifference() {
+        return SetViews.symmetricDifference(first, second).immutableCopy();
+    }
+
+    @Benchmark
+    public List<Integer> sortedMergeSymmetricDifference() {
+        return SortedSets.symmetricDifference(sortedFirst, sortedSecond).toList();
+    }
+
+    @Benchmark
+    public Set<Integer> streamSymmetricDifference() {
+        return Stream.concat(first.stream().filter(s -> !second.contains(s)),
+                        second.stream().filter(s -> !first.contains(s)))
+                .collect(Collectors.toSet());
+    }
+
+    @Benchmark
+    public Set<Integer> guavaUnion() {
+        return ImmutableSet.copyOf(Sets.union(first, second));
+    }
+
+    @Benchmark
+    public Set<Integer> setViewsUnion() {
+        return SetViews.union(first, second).immutableCopy();
+    }
+
+    @Benchmark
+    public List<Integer> sortedMergeUnion() {
+        return SortedSets.union(sortedFirst, sortedSecond).toList();
+    }
+
+    @Benchmark
+    public Set<Integer> streamUnion() {
+        return Stream.concat(first.stream(), second.stream()).collect(Collectors.toSet());
+    }
+}
@@ -1,11 +1,15 @@
 package com.github.arteam.jgcompare;
 
+import com.github.arteam.jgcompare.util.StripedGrouping;
+import com.github.arteam.jgcompare.util.Tokenizer;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Streams;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -13,6 +17,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Date: 4/16/15
@@ -35,6 +40,29 @@ public class FluentIterablesTest {
         assertThat(stream.flatMap(s -> Stream.of(s.split(" ")))
                 .map(Integer::parseInt)
                 .collect(Collectors.toList())).containsOnly(1, 18, 20, 24, 9, 92);
+
+        // Tokens are parsed in place, without a string or an array per line
+        Tokenizer tokenizer = Tokenizer.on(' ');
+        assertThat(Streams.stream(source)
+                .flatMapToInt(tokenizer::splitToInts)
+                .toArray()).containsOnly(1, 18, 20, 24, 9, 92);
+        assertThat(Streams.stream(source)
+                .flatMap(tokenizer::split)
+                .map(CharSequence::toString)
+                .toList()).isEqualTo(FluentIterable.from(source).transformAndConcat(splitter::split).toList());
+    }
+
+    @Test
+    public void testTransformAndConcatMalformed() {
+        Tokenizer tokenizer = Tokenizer.on(CharMatcher.anyOf(" ,"));
+        assertThat(tokenizer.splitToInts("-2147483648,2147483647 +7").toArray())
+                .containsExactly(Integer.MIN_VALUE, Integer.MAX_VALUE, 7);
+        assertThatThrownBy(() -> tokenizer.splitToInts("12  13").toArray())
+                .isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> tokenizer.splitToInts("2147483648").toArray())
+                .isInstanceOf(NumberFormatException.class);
+        assertThatThrownBy(() -> tokenizer.splitToInts("12a").toArray())
+                .isInstanceOf(NumberFormatException.class);
     }
 
 
@@ -56,5 +84,13 @@ public class FluentIterablesTest {
                         .put("2", ImmutableList.of("20", "24"))
                         .put("9", ImmutableList.of("9", "92"))
                         .build());
+
+        assertThat(StripedGrouping.groupingBy(Streams.stream(source).flatMap(splitter::splitToStream),
+                s -> s.substring(0, 1)))
+                .isEqualTo(ImmutableMap.<String, List<String>>builder()
+                        .put("1", ImmutableList.of("1", "18"))
+                        .put("2", ImmutableList.of("20", "24"))
+                        .put("9", ImmutableList.of("9", "92"))
+                        .build());
     }
 }
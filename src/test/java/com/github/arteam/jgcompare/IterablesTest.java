@@ -1,22 +1,58 @@
 package com.github.arteam.jgcompare;
 
+import com.github.arteam.jgcompare.util.BoundedCollectors;
+import com.github.arteam.jgcompare.util.BulkMutations;
+import com.github.arteam.jgcompare.util.CountMinSketch;
+import com.github.arteam.jgcompare.util.Frequencies;
+import com.github.arteam.jgcompare.util.JoiningWriter;
+import com.github.arteam.jgcompare.util.Pipeline;
 import com.github.arteam.jgcompare.util.StreamUtils;
+import com.github.arteam.jgcompare.util.metrics.Instrumentation;
+import com.github.arteam.jgcompare.util.metrics.LatencyHistogram;
+import com.github.arteam.jgcompare.util.metrics.MetricsSink;
+import com.github.arteam.jgcompare.util.metrics.StageMetrics;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.assertj.core.data.Percentage;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Date: 3/23/14
@@ -85,6 +121,27 @@ public class IterablesTest {
                 .limit(10)
                 .collect(Collectors.toList()))
                 .isEqualTo(expected);
+
+        // Read in place, without a remainder per element
+        List<String> list = ImmutableList.copyOf(source);
+        assertThat(StreamUtils.cycle(list).limit(10).toList()).isEqualTo(expected);
+        assertThat(StreamUtils.cycle(list, 10).toList()).isEqualTo(expected);
+        assertThat(StreamUtils.cycle(list, 10).spliterator().getExactSizeIfKnown()).isEqualTo(10);
+        assertThat(StreamUtils.cycleToArray(list, 10, String[]::new)).containsExactlyElementsOf(expected);
+        assertThat(StreamUtils.cycle(ImmutableList.of()).findAny()).isEmpty();
+        assertThat(StreamUtils.cycleToArray(ImmutableList.of(), 10, String[]::new)).isEmpty();
+    }
+
+    @Test
+    public void testCycleParallel() {
+        List<Integer> period = IntStream.range(0, 7).boxed().toList();
+        List<Integer> expected = IntStream.range(0, 100_003).map(i -> i % 7).boxed().toList();
+        assertThat(StreamUtils.cycle(period, expected.size()).parallel().toList()).isEqualTo(expected);
+        assertThat(StreamUtils.cycle(period, expected.size()).parallel().toArray(Integer[]::new))
+                .containsExactlyElementsOf(expected);
+        assertThat(StreamUtils.cycleToArray(period, expected.size(), Integer[]::new)).containsExactlyElementsOf(expected);
+        assertThat(StreamUtils.cycle(new LinkedList<>(period)).parallel().limit(expected.size()).toList())
+                .isEqualTo(expected);
     }
 
     @Test
@@ -98,6 +155,142 @@ public class IterablesTest {
                 .filter(s -> s.startsWith("d"))
                 .collect(Collectors.toList()))
                 .containsOnly("def");
+
+        // Both filters fused into one loop
+        assertThat(Pipeline.from(source)
+                .filter(s -> s.length() > 1)
+                .filter(s -> s.startsWith("d"))
+                .toList())
+                .containsOnly("def");
+    }
+
+    @Test
+    public void testFilterInstrumented(@TempDir Path dir) throws IOException {
+        Predicate<String> longWords = s -> s.length() > 1;
+        assertThat(Instrumentation.filter("longWords", longWords)).isSameAs(longWords);
+
+        List<Long> runs = new ArrayList<>();
+        MetricsSink sink = new MetricsSink() {
+            @Override
+            public void onRun(StageMetrics stage, long durationNanos, long allocatedBytes, long elements) {
+                runs.add(elements);
+            }
+        };
+        Instrumentation.setEnabled(true);
+        Instrumentation.addSink(sink);
+        try (Recording recording = new Recording()) {
+            recording.enable("com.github.arteam.jgcompare.StageRun").withThreshold(Duration.ZERO);
+            recording.start();
+            assertThat(stream
+                    .filter(Instrumentation.filter("longWords", longWords))
+                    .filter(Instrumentation.filter("startsWithD", s -> s.startsWith("d")))
+                    .collect(Instrumentation.collector("toList", Collectors.toList())))
+                    .containsOnly("def");
+            assertThat(ImmutableList.copyOf(Instrumentation.view("guavaFilter", Iterables.filter(source, longWords::test))))
+                    .containsExactly("as", "def");
+            recording.stop();
+
+            assertThat(Instrumentation.metrics("longWords"))
+                    .extracting(StageMetrics::elementsIn, StageMetrics::elementsOut)
+                    .containsExactly(3L, 2L);
+            assertThat(Instrumentation.metrics("startsWithD").selectivity()).isEqualTo(0.5);
+            assertThat(Instrumentation.metrics("toList").latency().count()).isEqualTo(1);
+            assertThat(Instrumentation.metrics("guavaFilter").elementsOut()).isEqualTo(2);
+
+            // A collection view keeps its size() and contains()
+            Iterable<String> collectionView = Instrumentation.view("collectionFilter", Collections2.filter(ImmutableList.copyOf(source), longWords::test));
+            assertThat(collectionView).isInstanceOf(Collection.class);
+            assertThat(((Collection<String>) collectionView).contains("def")).isTrue();
+            assertThat(ImmutableList.copyOf(collectionView)).containsExactly("as", "def");
+            assertThat(Instrumentation.metrics("collectionFilter").elementsOut()).isEqualTo(2);
+            assertThat(runs).containsExactly(1L);
+
+            Path file = dir.resolve("stages.jfr");
+            recording.dump(file);
+            assertThat(RecordingFile.readAllEvents(file))
+                    .filteredOn(e -> e.getEventType().getName().equals("com.github.arteam.jgcompare.StageRun"))
+                    .singleElement()
+                    .satisfies(e -> assertThat(e.getString("stage")).isEqualTo("toList"));
+
+            Collector<Integer, ?, ConcurrentMap<Integer, Long>> byDigit = Instrumentation.collector("byDigit",
+                    Collectors.groupingByConcurrent(i -> i % 10, Collectors.counting()));
+            assertThat(byDigit.characteristics()).doesNotContain(Collector.Characteristics.CONCURRENT);
+            assertThat(IntStream.range(0, 100_000).boxed().parallel().collect(byDigit)).hasSize(10);
+            assertThat(Instrumentation.metrics("byDigit").elementsIn()).isEqualTo(100_000);
+        } finally {
+            Instrumentation.removeSink(sink);
+            Instrumentation.setEnabled(false);
+            Instrumentation.reset();
+        }
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongStream.rangeClosed(1, 10_000).parallel().forEach(histogram::record);
+        assertThat(histogram.count()).isEqualTo(10_000);
+        assertThat(histogram.max()).isEqualTo(10_000);
+        assertThat(histogram.mean()).isEqualTo(5_000.5);
+        assertThat(histogram.valueAtPercentile(50)).isCloseTo(5_000, Percentage.withPercentage(100.0 / 16));
+        assertThat(histogram.valueAtPercentile(99)).isCloseTo(9_900, Percentage.withPercentage(100.0 / 16));
+        assertThat(histogram.valueAtPercentile(0)).isEqualTo(1);
+    }
+
+    @Test
+    public void testFilterMapLimit() {
+        List<Integer> numbers = IntStream.range(0, 1_000).boxed().toList();
+        List<String> expected = numbers.stream()
+                .filter(i -> i % 2 == 0)
+                .filter(i -> i % 3 == 0)
+                .map(i -> i * 10)
+                .map(Object::toString)
+                .limit(5)
+                .filter(s -> !s.equals("120"))
+                .toList();
+        assertThat(Pipeline.from(numbers)
+                .filter(i -> i % 2 == 0)
+                .filter(i -> i % 3 == 0)
+                .map(i -> i * 10)
+                .map(Object::toString)
+                .limit(5)
+                .filter(s -> !s.equals("120"))
+                .toArray(String[]::new))
+                .containsExactly(expected.toArray(String[]::new))
+                .containsExactly("0", "60", "180", "240");
+        assertThat(Pipeline.from(Iterables.unmodifiableIterable(numbers))
+                .map(i -> i + 1)
+                .limit(3)
+                .limit(2)
+                .toList())
+                .containsExactly(1, 2);
+        // Only maps, so the array is filled directly
+        assertThat(Pipeline.from(numbers)
+                .map(i -> i * 2)
+                .map(Object::toString)
+                .toArray(String[]::new))
+                .containsExactly(numbers.stream().map(i -> i * 2).map(Object::toString).toArray(String[]::new));
+    }
+
+    @Test
+    public void testLimitThenFilter() {
+        List<Integer> numbers = List.of(0, 1, 2, 3, 4, 5);
+        AtomicInteger pulled = new AtomicInteger();
+        assertThat(Pipeline.from(numbers)
+                .map(i -> {
+                    pulled.incrementAndGet();
+                    return i;
+                })
+                .limit(1)
+                .filter(i -> i > 0)
+                .toList())
+                .isEqualTo(numbers.stream().limit(1).filter(i -> i > 0).toList())
+                .isEmpty();
+        assertThat(pulled).hasValue(1);
+        assertThat(Pipeline.from(Iterables.unmodifiableIterable(numbers))
+                .limit(3)
+                .filter(i -> i % 2 == 1)
+                .toList())
+                .containsExactly(1);
     }
 
     @Test
@@ -127,6 +320,33 @@ public class IterablesTest {
                 .filter(s -> s.equals("def"))
                 .count())
                 .isEqualTo(3);
+
+        // Counted once, queried many times
+        Frequencies<String> frequencies = source.stream().collect(Frequencies.counting());
+        assertThat(frequencies.count("def")).isEqualTo(3);
+        assertThat(frequencies.count("q")).isEqualTo(2);
+        assertThat(frequencies.count("xyz")).isEqualTo(0);
+        assertThat(frequencies.size()).isEqualTo(4);
+        assertThat(frequencies.totalCount()).isEqualTo(source.size());
+
+        frequencies.add("xyz", 0);
+        assertThat(frequencies.size()).isEqualTo(4);
+        List<String> counted = new ArrayList<>();
+        frequencies.forEach((element, count) -> counted.add(element));
+        assertThat(counted).doesNotContain("xyz");
+        assertThatThrownBy(() -> frequencies.add("xyz", -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testFrequencyParallel() {
+        List<Integer> source = IntStream.range(0, 100_000).map(i -> i % 1_000).boxed().toList();
+        Frequencies<Integer> frequencies = source.parallelStream().collect(Frequencies.counting());
+        assertThat(frequencies.size()).isEqualTo(1_000);
+        assertThat(IntStream.range(0, 1_000)).allMatch(i -> frequencies.count(i) == Iterables.frequency(source, i));
+
+        CountMinSketch<Integer> sketch = source.parallelStream().collect(CountMinSketch.counting(0.001, 0.99));
+        assertThat(sketch.totalCount()).isEqualTo(source.size());
+        assertThat(IntStream.range(0, 1_000)).allMatch(i -> sketch.estimate(i) >= 100 && sketch.estimate(i) <= 200);
     }
 
     @Test
@@ -139,18 +359,71 @@ public class IterablesTest {
     public void testGetLast() {
         assertThat(Iterables.getLast(source, "")).isEqualTo("def");
         assertThat(stream.reduce((l, r) -> r).get()).isEqualTo("def");
+
+        List<String> source = Lists.newArrayList(this.source);
+        assertThat(source.stream().collect(BoundedCollectors.last())).contains("def");
+        // Skips to the end of the list without a traversal
+        assertThat(BoundedCollectors.last(source.stream())).contains("def");
+        assertThat(BoundedCollectors.last(Stream.empty())).isEmpty();
+    }
+
+    @Test
+    public void testGetLastN() {
+        List<Integer> source = IntStream.range(0, 100_000).boxed().toList();
+        List<Integer> expected = ImmutableList.copyOf(Iterables.skip(source, source.size() - 7));
+        assertThat(source.parallelStream().collect(BoundedCollectors.lastN(7))).isEqualTo(expected);
+        assertThat(BoundedCollectors.lastN(source.stream(), 7)).isEqualTo(expected);
+        assertThat(BoundedCollectors.lastN(source.stream().filter(i -> true), 7)).isEqualTo(expected);
+        assertThat(BoundedCollectors.lastN(Stream.of("as", "q"), 7)).containsExactly("as", "q");
+    }
+
+    @Test
+    public void testTopK() {
+        List<Integer> source = IntStream.range(0, 100_000).map(i -> (i * 7_919) % 100_003).boxed().toList();
+        assertThat(source.parallelStream().collect(BoundedCollectors.topK(5, Comparator.naturalOrder())))
+                .isEqualTo(Ordering.natural().greatestOf(source, 5))
+                .isEqualTo(source.stream().sorted(Comparator.reverseOrder()).limit(5).toList());
     }
 
     @Test
     public void testGetOnlyElement() {
         assertThat(Iterables.getOnlyElement(Iterables.filter(source, s -> s.length() == 3))).isEqualTo("def");
         assertThat(stream.filter(s -> s.length() == 3).findFirst().get()).isEqualTo("def");
+
+        // Checks the uniqueness too
+        assertThat(StreamUtils.findOnly(Streams.stream(source).filter(s -> s.length() == 3)))
+                .isEqualTo(new StreamUtils.One<>("def"));
+        assertThat(StreamUtils.findOnly(Streams.stream(source).filter(s -> s.length() == 3)).orElseThrow()).isEqualTo("def");
+        assertThat(StreamUtils.findOnly(Streams.stream(source).filter(s -> s.length() < 3)))
+                .isEqualTo(new StreamUtils.Multiple<>("as", "q"));
+        assertThatThrownBy(() -> StreamUtils.findOnly(Streams.stream(source).filter(s -> s.length() < 3)).orElseThrow())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testGetOnlyElementParallel() {
+        List<Integer> numbers = IntStream.range(0, 1_000_000).boxed().toList();
+        assertThat(StreamUtils.findOnly(numbers.parallelStream().filter(i -> i == 765_432)))
+                .isEqualTo(new StreamUtils.One<>(765_432));
+        assertThat(StreamUtils.findOnly(numbers.parallelStream().filter(i -> i > 2_000_000)))
+                .isEqualTo(new StreamUtils.None<>());
+
+        // A duplicate early in the data stops every split
+        AtomicInteger tested = new AtomicInteger();
+        StreamUtils.Only<Integer> duplicates = StreamUtils.findOnly(numbers.parallelStream()
+                .filter(i -> {
+                    tested.incrementAndGet();
+                    return i % 1_000 == 0;
+                }));
+        assertThat(duplicates).isInstanceOf(StreamUtils.Multiple.class);
+        assertThat(tested.get()).isLessThan(numbers.size());
     }
 
     @Test
     public void testGetOnlyElementWithDefault() {
         assertThat(Iterables.getOnlyElement(Iterables.filter(source, s -> s.length() == 4), "mann")).isEqualTo("mann");
         assertThat(stream.filter(s -> s.length() == 4).findFirst().orElse("mann")).isEqualTo("mann");
+        assertThat(StreamUtils.findOnly(Streams.stream(source).filter(s -> s.length() == 4)).orElse("mann")).isEqualTo("mann");
     }
 
     @Test
@@ -166,6 +439,34 @@ public class IterablesTest {
                 .isEqualTo(1);
     }
 
+    @Test
+    public void testIndexOfParallel() {
+        List<String> source = IntStream.range(0, 100_000).mapToObj(Integer::toString).toList();
+        assertThat(Iterables.indexOf(source, it -> it.equals("77777"))).isEqualTo(77777);
+
+        // Sized source, split by the source itself
+        assertThat(StreamUtils.withIndex(source.parallelStream())
+                .filter(e -> e.element().equals("77777"))
+                .map(e -> e.index())
+                .findFirst()
+                .orElseThrow())
+                .isEqualTo(77777);
+
+        // Unsized source, split by batches
+        assertThat(StreamUtils.withIndex(source.parallelStream().filter(s -> true))
+                .allMatch(e -> e.element().equals(Integer.toString(e.index()))))
+                .isTrue();
+
+        // Without a pair per element
+        AtomicInteger index = new AtomicInteger(-1);
+        StreamUtils.forEachIndexed(source.parallelStream(), (s, i) -> {
+            if (s.equals("77777")) {
+                index.set(i);
+            }
+        });
+        assertThat(index.get()).isEqualTo(77777);
+    }
+
     @Test
     public void testIsEmpty() {
         assertThat(Iterables.isEmpty(source)).isEqualTo(false);
@@ -214,6 +515,21 @@ public class IterablesTest {
                 ImmutableList.of("trash", "talk", "arg"),
                 ImmutableList.of("loose", "fade", "cross"),
                 ImmutableList.of("dump", "bust"));
+
+        // Chunking stream
+        assertThat(StreamUtils.chunked(source.stream(), partitionSize).toList()).containsExactly(
+                ImmutableList.of("trash", "talk", "arg"),
+                ImmutableList.of("loose", "fade", "cross"),
+                ImmutableList.of("dump", "bust"));
+    }
+
+    @Test
+    public void testPartitionParallel() {
+        List<Integer> source = IntStream.range(0, 100_003).boxed().toList();
+        assertThat(StreamUtils.chunked(source.parallelStream(), 7).toList())
+                .isEqualTo(Lists.partition(source, 7));
+        assertThat(StreamUtils.paddedChunked(source.parallelStream(), 7, null).toList())
+                .isEqualTo(ImmutableList.copyOf(Iterables.paddedPartition(source, 7)));
     }
 
     @Test
@@ -239,6 +555,11 @@ public class IterablesTest {
                 ImmutableList.of("trash", "talk", "arg"),
                 ImmutableList.of("loose", "fade", "cross"),
                 Arrays.asList("dump", "bust", null));
+
+        assertThat(StreamUtils.paddedChunked(source.stream(), 3, null).toList()).containsExactly(
+                ImmutableList.of("trash", "talk", "arg"),
+                ImmutableList.of("loose", "fade", "cross"),
+                Arrays.asList("dump", "bust", null));
     }
 
 
@@ -250,6 +571,32 @@ public class IterablesTest {
 
         assertThat(stream.filter(s -> !removed.contains(s))
                 .collect(Collectors.toList())).containsExactly("as", "def");
+
+        // In place, with a hash probe instead of a list scan
+        List<String> list = Lists.newArrayList("as", "q", "def", "q");
+        assertThat(BulkMutations.removeAll(list, removed)).isTrue();
+        assertThat(list).containsExactly("as", "def");
+        assertThat(BulkMutations.removeAll(list, removed)).isFalse();
+    }
+
+    @Test
+    public void testRemoveAllLarge() {
+        List<Integer> numbers = IntStream.range(0, 300_000).boxed().collect(Collectors.toCollection(ArrayList::new));
+        List<Integer> blocklist = IntStream.range(0, 1_000).map(i -> i * 7 + 3).boxed().toList();
+        List<Integer> expected = numbers.stream().filter(i -> !blocklist.contains(i)).toList();
+
+        assertThat(BulkMutations.removeAll(numbers, blocklist)).isTrue();
+        BulkMutations.trimToSize(numbers);
+        assertThat(numbers).isEqualTo(expected);
+
+        List<Integer> linked = new LinkedList<>(IntStream.range(0, 100).boxed().toList());
+        assertThat(BulkMutations.retainAll(linked, blocklist)).isTrue();
+        assertThat(linked).containsExactlyElementsOf(blocklist.subList(0, 14));
+
+        List<Integer> unchanged = new ArrayList<>(List.of(1, 2, 3));
+        assertThatThrownBy(() -> BulkMutations.removeIf(unchanged, i -> 6 / (i - 2) > 0))
+                .isInstanceOf(ArithmeticException.class);
+        assertThat(unchanged).containsExactly(1, 2, 3);
     }
 
     @Test
@@ -260,6 +607,10 @@ public class IterablesTest {
         assertThat(stream
                 .filter(((Predicate<String>) it -> it.length() < 3).negate())
                 .collect(Collectors.toList())).containsOnly("def");
+
+        List<String> list = Lists.newArrayList("as", "q", "def");
+        assertThat(BulkMutations.removeIf(list, it -> it.length() < 3)).isTrue();
+        assertThat(list).containsExactly("def");
     }
 
     @Test
@@ -271,6 +622,10 @@ public class IterablesTest {
         assertThat(stream.filter(s -> removed.contains(s))
                 .collect(Collectors.toList()))
                 .containsExactly("q");
+
+        List<String> list = Lists.newArrayList("as", "q", "def", "q");
+        assertThat(BulkMutations.retainAll(list, removed)).isTrue();
+        assertThat(list).containsExactly("q", "q");
     }
 
     @Test
@@ -304,10 +659,107 @@ public class IterablesTest {
     }
 
     @Test
-    public void testToString() {
+    public void testToString() throws IOException {
         assertThat(Iterables.toString(source)).isEqualTo("[as, q, def]");
         assertThat(stream.collect(Collectors.joining(", ", "[", "]"))).isEqualTo("[as, q, def]");
 
+        // Straight to the target, without an intermediate string
+        JoiningWriter writer = JoiningWriter.joining(", ", "[", "]");
+        assertThat(writer.toString(Streams.stream(source))).isEqualTo("[as, q, def]");
+        assertThat(writer.writeTo(Streams.stream(source), new StringBuilder("Teams: "))).hasToString("Teams: [as, q, def]");
+        assertThat(writer.toString(Stream.empty())).isEqualTo("[]");
+    }
+
+    @Test
+    public void testToStringTargets() throws IOException {
+        List<String> words = IntStream.range(0, 100_000).mapToObj(i -> i % 10 == 0 ? "Montréal " + i : "w" + i).toList();
+        String expected = words.stream().collect(Collectors.joining(", ", "[", "]"));
+        JoiningWriter writer = JoiningWriter.joining(", ", "[", "]");
+
+        assertThat(writer.toString(words.parallelStream())).isEqualTo(expected);
+        assertThat(writer.toString(IntStream.range(0, 100_000).boxed().parallel()))
+                .isEqualTo(IntStream.range(0, 100_000).boxed().collect(Collectors.toList()).toString());
+
+        AtomicInteger flushes = new AtomicInteger();
+        StringWriter stringWriter = new StringWriter() {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+        writer.flushEvery(10_000).writeTo(words.stream(), stringWriter);
+        assertThat(stringWriter.toString()).isEqualTo(expected);
+        assertThat(flushes.get()).isGreaterThan(expected.length() / 10_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written = writer.writeTo(words.parallelStream(), Channels.newChannel(bytes), StandardCharsets.UTF_8);
+        assertThat(bytes.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+        assertThat(written).isEqualTo(bytes.size());
+
+        ByteBuffer buffer = writer.writeTo(words.stream(), ByteBuffer.allocateDirect(2 * expected.length()), StandardCharsets.UTF_8);
+        assertThat(StandardCharsets.UTF_8.decode(buffer.flip()).toString()).isEqualTo(expected);
+        assertThatThrownBy(() -> writer.writeTo(words.stream(), ByteBuffer.allocate(100), StandardCharsets.UTF_8))
+                .isInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    public void testToStringRenderAhead() throws IOException {
+        List<String> words = IntStream.range(0, 100_000).mapToObj(i -> "w" + i).toList();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            submitted.incrementAndGet();
+            ForkJoinPool.commonPool().execute(task);
+        };
+        int[] written = {0};
+        int[] maxAhead = {0};
+        StringBuilder out = new StringBuilder();
+        Appendable slowTarget = new Appendable() {
+            @Override
+            public Appendable append(CharSequence text) {
+                if (text.length() > 1) {
+                    // Every chunk is appended in one piece
+                    maxAhead[0] = Math.max(maxAhead[0], submitted.get() - written[0]);
+                    written[0]++;
+                    Uninterruptibles.sleepUninterruptibly(Duration.ofMillis(1));
+                }
+                out.append(text);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence text, int start, int end) {
+                return append(text.subSequence(start, end));
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+        JoiningWriter.joining(",", "[", "]").renderOn(executor, 2).writeTo(words.parallelStream(), slowTarget);
+        assertThat(out.toString()).isEqualTo(words.stream().collect(Collectors.joining(",", "[", "]")));
+        assertThat(written[0]).isGreaterThan(2);
+        assertThat(maxAhead[0]).isBetween(1, 2);
+        assertThatThrownBy(() -> JoiningWriter.joining(",").renderOn(executor, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testToStringFailingElement() {
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("Can't render");
+            }
+        };
+        List<Object> elements = IntStream.range(0, 100_000).mapToObj(i -> i == 50_000 ? broken : i).toList();
+        JoiningWriter writer = JoiningWriter.joining(",");
+        assertThatThrownBy(() -> writer.toString(elements.stream()))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Can't render");
+        assertThatThrownBy(() -> writer.renderOn(ForkJoinPool.commonPool(), 2).toString(elements.parallelStream()))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Can't render");
     }
 
 }
@@ -1,27 +1,54 @@
 package com.github.arteam.jgcompare;
 
 import com.github.arteam.jgcompare.domain.Team;
+import com.github.arteam.jgcompare.util.BatchLoader;
+import com.github.arteam.jgcompare.util.ConcurrentMapper;
+import com.github.arteam.jgcompare.util.DerivedViewCache;
+import com.github.arteam.jgcompare.util.LongObjectMap;
+import com.github.arteam.jgcompare.util.MapDifferences;
+import com.github.arteam.jgcompare.util.MapFilters;
+import com.github.arteam.jgcompare.util.MappedTeamIndex;
+import com.github.arteam.jgcompare.util.MemoizingMap;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.entry;
 
 /**
@@ -68,6 +95,130 @@ public class MapsTest {
         assertThat(teams.stream()
                 .collect(Collectors.toMap(Team::id, Function.identity())))
                 .isEqualTo(expected);
+
+        // Without boxing the ids
+        LongObjectMap<Team> index = teams.stream().collect(LongObjectMap.toUniqueIndex(Team::id));
+        assertThat(index.isFrozen()).isTrue();
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.get(42)).isEqualTo(new Team(42, "St. Louis Blues"));
+        assertThat(index.get(41)).isNull();
+
+        LongObjectMap<Team> bulkIndex = LongObjectMap.uniqueIndex(teams.stream(), Team::id);
+        assertThat(bulkIndex.get(12)).isEqualTo(new Team(12, "Chicago Blackhawks"));
+        assertThat(bulkIndex.get(88)).isEqualTo(new Team(88, "Colorado Avalanche"));
+        assertThatThrownBy(() -> bulkIndex.put(7, new Team(7, "Vegas Golden Knights")))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testUniqueIndexCached() {
+        List<Team> teams = ImmutableList.of(
+                new Team(12, "Chicago Blackhawks"),
+                new Team(42, "St. Louis Blues"),
+                new Team(88, "Colorado Avalanche"));
+        DerivedViewCache cache = new DerivedViewCache(100);
+        DerivedViewCache.View<List<Team>, Map<Long, Team>> byId = cache.view(list -> Maps.uniqueIndex(list, Team::id));
+
+        Map<Long, Team> index = byId.get(teams);
+        assertThat(index).containsOnlyKeys(12L, 42L, 88L);
+        assertThat(byId.get(teams)).isSameAs(index);
+        // Another source, even an equal one, is another view
+        assertThat(byId.get(ImmutableList.copyOf(teams.toArray(new Team[0])))).isNotSameAs(index).isEqualTo(index);
+        // So is another version of the same source
+        assertThat(byId.get(teams, 1)).isNotSameAs(index).isEqualTo(index);
+        assertThat(cache.stats()).extracting(DerivedViewCache.Stats::hits, DerivedViewCache.Stats::misses,
+                DerivedViewCache.Stats::loads).containsExactly(1L, 3L, 3L);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.weight()).isEqualTo(6);
+    }
+
+    @Test
+    public void testDerivedViewCacheEviction() {
+        DerivedViewCache cache = new DerivedViewCache(100);
+        DerivedViewCache.View<List<Integer>, Set<Integer>> view = cache.view(ImmutableSet::copyOf);
+        List<List<Integer>> hot = IntStream.range(0, 5)
+                .mapToObj(i -> IntStream.range(i * 10, i * 10 + 10).boxed().toList())
+                .toList();
+        for (int i = 0; i < 5; i++) {
+            hot.forEach(view::get);
+        }
+        // A scan over one-off sources doesn't flush the popular ones
+        for (int i = 0; i < 1_000; i++) {
+            view.get(IntStream.range(0, 10).boxed().toList());
+        }
+        long loads = cache.stats().loads();
+        hot.forEach(view::get);
+        assertThat(cache.stats().loads()).isEqualTo(loads);
+        assertThat(cache.weight()).isLessThanOrEqualTo(100);
+        assertThat(cache.stats().evictions()).isGreaterThan(900);
+
+        // Too heavy to be cached at all
+        view.get(IntStream.range(0, 101).boxed().toList());
+        assertThat(cache.weight()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    public void testDerivedViewCacheRefresh() {
+        List<Runnable> refreshes = new ArrayList<>();
+        DerivedViewCache cache = new DerivedViewCache(100, v -> 1, refreshes::add);
+        List<Team> teams = new ArrayList<>(List.of(new Team(12, "Chicago Blackhawks")));
+        DerivedViewCache.View<List<Team>, Map<Long, Team>> byId = cache.view(list -> Maps.uniqueIndex(list, Team::id));
+        Map<Long, Team> first = byId.getOrRefresh(teams, 1);
+
+        teams.add(new Team(42, "St. Louis Blues"));
+        // The old view is served until the new one is ready
+        assertThat(byId.getOrRefresh(teams, 2)).isSameAs(first);
+        assertThat(byId.getOrRefresh(teams, 2)).isSameAs(first);
+        assertThat(refreshes).hasSize(1);
+        refreshes.get(0).run();
+        assertThat(byId.getOrRefresh(teams, 2)).containsOnlyKeys(12L, 42L);
+        assertThat(byId.get(teams, 2)).containsOnlyKeys(12L, 42L);
+        assertThat(cache.stats().loads()).isEqualTo(2);
+    }
+
+    @Test
+    public void testUniqueIndexMapped(@TempDir Path dir) throws IOException {
+        Map<Long, Team> index = Maps.uniqueIndex(ImmutableList.of(
+                new Team(88, "Colorado Avalanche"),
+                new Team(12, "Chicago Blackhawks"),
+                new Team(42, "St. Louis Blues"),
+                new Team(7, "Montréal Canadiens")), Team::id);
+        Path file = dir.resolve("teams.idx");
+        MappedTeamIndex.write(file, index);
+
+        MappedTeamIndex mapped = MappedTeamIndex.open(file);
+        assertThat(mapped.size()).isEqualTo(4);
+        assertThat(index.keySet()).allMatch(id -> mapped.get(id).equals(index.get(id)));
+        assertThat(mapped.get(7)).isEqualTo(new Team(7, "Montréal Canadiens"));
+        assertThat(mapped.get(41)).isNull();
+        assertThat(mapped.containsKey(88)).isTrue();
+        assertThat(mapped.containsKey(89)).isFalse();
+        assertThatThrownBy(() -> MappedTeamIndex.open(Files.write(dir.resolve("empty.idx"), new byte[8])))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testUniqueIndexDuplicateKeys() {
+        List<Team> teams = ImmutableList.of(
+                new Team(12, "Chicago Blackhawks"),
+                new Team(12, "Chicago Wolves"));
+        assertThatThrownBy(() -> Maps.uniqueIndex(teams, Team::id))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> teams.stream().collect(Collectors.toMap(Team::id, Function.identity())))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> LongObjectMap.uniqueIndex(teams.stream(), Team::id))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testUniqueIndexLarge() {
+        List<Team> teams = LongStream.range(0, 100_000)
+                .mapToObj(id -> new Team(id * 31, "Team " + id))
+                .toList();
+        LongObjectMap<Team> index = teams.parallelStream().collect(LongObjectMap.toUniqueIndex(Team::id));
+        assertThat(index.size()).isEqualTo(teams.size());
+        assertThat(teams).allMatch(team -> index.get(team.id()) == team);
+        assertThat(index.containsKey(32)).isFalse();
     }
 
     @Test
@@ -84,6 +235,11 @@ public class MapsTest {
                         },
                         TreeMap::new));
         assertThat(result).isEqualTo(expected);
+
+        try (BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> Maps.asMap(keys, teams::get), 2, Duration.ofMillis(10))) {
+            assertThat(loader.asNavigableMap(source)).containsExactly(
+                    entry(12, "Chicago Blackhawks"), entry(42, "St. Louis Blues"), entry(88, "Colorado Avalanche"));
+        }
     }
 
     @Test
@@ -93,6 +249,116 @@ public class MapsTest {
 
         assertThat(Maps.asMap(source, teams::get)).isEqualTo(expected);
         assertThat(source.stream().collect(Collectors.toMap(Function.identity(), teams::get))).isEqualTo(expected);
+
+        // The lookups may block, so they run on virtual threads
+        assertThat(ConcurrentMapper.asMap(source, 2, teams::get)).containsExactly(
+                entry(42, "St. Louis Blues"), entry(88, "Colorado Avalanche"), entry(12, "Chicago Blackhawks"));
+
+        // One call to the bulk loader for all the keys
+        List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+        try (BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            batches.add(ImmutableSet.copyOf(keys));
+            return Maps.asMap(keys, teams::get);
+        }, 500, Duration.ofMillis(10))) {
+            assertThat(loader.asMap(source)).isEqualTo(expected);
+        }
+        assertThat(batches).containsExactly(source);
+    }
+
+    @Test
+    public void testBatchLoader() throws Exception {
+        AtomicInteger loadedKeys = new AtomicInteger();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        try (BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            batchSizes.add(keys.size());
+            loadedKeys.addAndGet(keys.size());
+            return keys.stream()
+                    .filter(k -> k % 10 != 0)
+                    .collect(Collectors.toMap(Function.identity(), k -> "Team " + k));
+        }, 100, Duration.ofMillis(20))) {
+            Map<Integer, String> result = loader.asMap(ContiguousSet.closedOpen(0, 1_000));
+            assertThat(result).hasSize(900).containsEntry(999, "Team 999").doesNotContainKey(990);
+            assertThat(batchSizes).hasSize(10).containsOnly(100);
+
+            // The same key waiting in a window is loaded once, a window is sent by the timer
+            batchSizes.clear();
+            CompletableFuture<String> first = loader.load(7);
+            CompletableFuture<String> second = loader.load(7);
+            assertThat(second).isSameAs(first);
+            assertThat(loader.load(10).get(5, TimeUnit.SECONDS)).isNull();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("Team 7");
+            assertThat(batchSizes).containsExactly(2);
+            assertThat(loadedKeys).hasValue(1_002);
+        }
+
+        try (BatchLoader<Integer, String> failing = new BatchLoader<>(keys -> {
+            throw new IllegalStateException("Lookup service is down");
+        }, 10, Duration.ZERO)) {
+            assertThatThrownBy(() -> failing.load(1).join())
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void testBatchLoaderClosed() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> ImmutableMap.of(), 10, Duration.ofMillis(20));
+        loader.close();
+        assertThatThrownBy(() -> loader.load(11))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Batch loader is closed");
+    }
+
+    @Test
+    public void testMapConcurrent() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Function<Integer, Integer> blockingLookup = i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return i * 2;
+        };
+        List<Integer> source = IntStream.range(0, 500).boxed().toList();
+        assertThat(ConcurrentMapper.mapConcurrent(source.stream(), 16, blockingLookup).toList())
+                .isEqualTo(source.stream().map(i -> i * 2).toList());
+        assertThat(maxRunning.get()).isBetween(2, 16);
+        assertThat(ConcurrentMapper.mapConcurrentUnordered(source.stream(), 64, blockingLookup).toList())
+                .containsExactlyInAnyOrderElementsOf(source.stream().map(i -> i * 2).toList());
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(64);
+
+        assertThatThrownBy(() -> ConcurrentMapper.mapConcurrent(source.stream(), 16, i -> {
+            if (i == 100) {
+                throw new IllegalArgumentException("No team " + i);
+            }
+            return i;
+        }).toList()).isInstanceOf(IllegalArgumentException.class).hasMessage("No team 100");
+    }
+
+    @Test
+    public void testMapConcurrentCancellation() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(7);
+        CountDownLatch interrupted = new CountDownLatch(7);
+        try (Stream<Integer> stream = ConcurrentMapper.mapConcurrent(Stream.of(1, 2, 3, 4, 5, 6, 7, 8), 8, i -> {
+            try {
+                if (i == 1) {
+                    started.await();
+                    return i;
+                }
+                started.countDown();
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return i;
+        })) {
+            assertThat(stream.findFirst()).hasValue(1);
+        }
+        assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
     }
 
     @Test
@@ -114,6 +380,37 @@ public class MapsTest {
                 .filter(e -> !stanleyCupWinners.containsKey(e.getKey()))
                 .collect(toMap()))
                 .isEqualTo(teamsWithoutACup);
+
+        // One pass for all the kinds of differences
+        assertThat(MapDifferences.stream(teams, stanleyCupWinners)
+                .filter(d -> d.kind() == MapDifferences.Kind.ONLY_LEFT)
+                .collect(Collectors.toMap(MapDifferences.Difference::key, MapDifferences.Difference::left)))
+                .isEqualTo(teamsWithoutACup);
+        assertThat(MapDifferences.stream(teams, stanleyCupWinners)
+                .collect(Collectors.groupingBy(MapDifferences.Difference::kind, Collectors.counting())))
+                .containsOnly(entry(MapDifferences.Kind.ONLY_LEFT, 3L), entry(MapDifferences.Kind.COMMON, 4L));
+    }
+
+    @Test
+    public void testDifferenceSortedParallel() {
+        ImmutableSortedMap<Integer, String> left = IntStream.range(0, 100_000).boxed()
+                .collect(ImmutableSortedMap.toImmutableSortedMap(Comparator.naturalOrder(), i -> i, i -> "Team " + i));
+        TreeMap<Integer, String> right = IntStream.range(50_000, 150_000).boxed()
+                .collect(Collectors.toMap(i -> i, i -> "Team " + (i % 3 == 0 ? -i : i), (a, b) -> a, TreeMap::new));
+        MapDifference<Integer, String> expected = Maps.difference(left, right);
+
+        Map<MapDifferences.Kind, Map<Integer, String>> actual = MapDifferences.stream(left, right)
+                .parallel()
+                .collect(Collectors.groupingBy(MapDifferences.Difference::kind,
+                        Collectors.toMap(MapDifferences.Difference::key, d -> d.left() != null ? d.left() : d.right())));
+        assertThat(actual.get(MapDifferences.Kind.ONLY_LEFT)).isEqualTo(expected.entriesOnlyOnLeft());
+        assertThat(actual.get(MapDifferences.Kind.ONLY_RIGHT)).isEqualTo(expected.entriesOnlyOnRight());
+        assertThat(actual.get(MapDifferences.Kind.COMMON)).isEqualTo(expected.entriesInCommon());
+        assertThat(actual.get(MapDifferences.Kind.DIFFERING)).isEqualTo(Maps.transformValues(expected.entriesDiffering(),
+                MapDifference.ValueDifference::leftValue));
+        assertThat(MapDifferences.stream(left, right).map(MapDifferences.Difference::key).toList())
+                .isSorted()
+                .hasSize(150_000);
     }
 
     @Test
@@ -125,6 +422,9 @@ public class MapsTest {
                 .filter(e -> e.getKey() > 20 && e.getValue().startsWith("C"))
                 .collect(toMap()))
                 .isEqualTo(ImmutableMap.of(88, "Colorado Avalanche"));
+
+        assertThat(MapFilters.filterEntries(teams, (k, v) -> k > 20 && v.startsWith("C")))
+                .isEqualTo(ImmutableMap.of(88, "Colorado Avalanche"));
     }
 
     @Test
@@ -137,6 +437,10 @@ public class MapsTest {
                 .collect(toMap()))
                 .containsOnly(entry(88, "Colorado Avalanche"), entry(92, "Winnipeg Jets"));
 
+        assertThat(MapFilters.filterIntKeys(teams, k -> k > 50))
+                .containsOnly(entry(88, "Colorado Avalanche"), entry(92, "Winnipeg Jets"));
+        assertThat(MapFilters.filterKeys(teams, k -> k > 100)).isEmpty();
+        assertThat(MapFilters.filterKeys(teams, k -> k > 0)).isSameAs(teams);
     }
 
     @Test
@@ -151,6 +455,8 @@ public class MapsTest {
                 .filter(e -> getLastWord(e.getValue()).startsWith("B"))
                 .collect(toMap()))
                 .isEqualTo(teamsWithNamesOnB);
+        assertThat(MapFilters.filterValues(teams, v -> getLastWord(v).startsWith("B")))
+                .containsExactlyEntriesOf(teamsWithNamesOnB);
     }
 
 
@@ -171,5 +477,18 @@ public class MapsTest {
                 .collect(toMap()))
                 .isEqualTo(teamNames);
 
+        // Computed on the first access only
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingMap<Integer, String, String> lastWords = MemoizingMap.transformValues(teams, name -> {
+            calls.incrementAndGet();
+            return getLastWord(name);
+        });
+        assertThat(lastWords.get(21)).isEqualTo("Bruins");
+        assertThat(lastWords.get(21)).isEqualTo("Bruins");
+        assertThat(lastWords.get(13)).isNull();
+        assertThat(calls).hasValue(1);
+        assertThat(lastWords.materialize()).containsExactlyEntriesOf(Maps.transformValues(teams, MapsTest::getLastWord));
+        assertThat(lastWords).isEqualTo(teamNames);
+        assertThat(calls).hasValue(teams.size());
     }
 }
@@ -1,6 +1,9 @@
 package com.github.arteam.jgcompare;
 
 import com.github.arteam.jgcompare.domain.TeamDivision;
+import com.github.arteam.jgcompare.util.ColumnarMultimap;
+import com.github.arteam.jgcompare.util.MappedDivisionIndex;
+import com.github.arteam.jgcompare.util.StripedGrouping;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
@@ -8,10 +11,14 @@ import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
@@ -66,6 +73,48 @@ public class MultimapsTest {
                 .contains(entry("Central", ImmutableList.of(
                         new TeamDivision("Nashville Predators", "Central"),
                         new TeamDivision("Dallas Stars", "Central"))));
+
+        // One flat array of values and a dictionary of divisions
+        ColumnarMultimap<String, TeamDivision> columnar = teams.stream()
+                .collect(ColumnarMultimap.index(TeamDivision::division));
+        assertThat(columnar.asMap()).isEqualTo(teamsByDivision.asMap());
+        assertThat(columnar.keySet()).containsExactly("Pacific", "Atlantic", "Central", "Metropolitan");
+        assertThat(columnar.get("Central")).containsExactly(
+                new TeamDivision("Nashville Predators", "Central"),
+                new TeamDivision("Dallas Stars", "Central"));
+        assertThat(columnar.get("Northwest")).isEmpty();
+        assertThat(teams.parallelStream().collect(ColumnarMultimap.index(TeamDivision::division)))
+                .isEqualTo(columnar);
+
+        // Striped by the hash of a division, without merging maps
+        assertThat(StripedGrouping.index(teams.stream(), TeamDivision::division)).isEqualTo(teamsByDivision);
+    }
+
+    @Test
+    public void testIndexMapped(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("divisions.idx");
+        MappedDivisionIndex.write(file, Multimaps.index(teams, TeamDivision::division));
+
+        MappedDivisionIndex mapped = MappedDivisionIndex.open(file);
+        assertThat(mapped.divisions()).containsExactly("Atlantic", "Central", "Metropolitan", "Pacific");
+        assertThat(mapped.divisions()).allMatch(division -> mapped.get(division).equals(teamsByDivision.get(division)));
+        assertThat(mapped.get("Pacific")).containsExactly(
+                new TeamDivision("Calgary Flames", "Pacific"),
+                new TeamDivision("Vancouver Canucks", "Pacific"));
+        assertThat(mapped.get("Northwest")).isEmpty();
+        assertThat(mapped.containsKey("Central")).isTrue();
+        assertThat(mapped.containsKey("Centra")).isFalse();
+    }
+
+    @Test
+    public void testIndexParallel() {
+        List<TeamDivision> teams = IntStream.range(0, 200_000)
+                .mapToObj(i -> new TeamDivision("Team " + i, "Division " + i % 5_000))
+                .toList();
+        assertThat(StripedGrouping.groupingBy(teams.parallelStream(), TeamDivision::division))
+                .isEqualTo(teams.stream().collect(Collectors.groupingBy(TeamDivision::division)));
+        assertThat(StripedGrouping.index(teams.parallelStream(), TeamDivision::division))
+                .isEqualTo(Multimaps.index(teams, TeamDivision::division));
     }
 
     @Test
@@ -1,13 +1,23 @@
 package com.github.arteam.jgcompare;
 
+import com.github.arteam.jgcompare.util.CartesianProduct;
+import com.github.arteam.jgcompare.util.SetViews;
+import com.github.arteam.jgcompare.util.SortedSets;
+import com.google.common.collect.ContiguousSet;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,6 +55,25 @@ public class SetsTest {
                 ImmutableList.of("2", "floor"),
                 ImmutableList.of("2", "arch"),
                 ImmutableList.of("2", "gamble"));
+
+        // Lazy, computed by the number of a tuple
+        CartesianProduct<String> product = CartesianProduct.of(first, second);
+        assertThat(product.size()).isEqualTo(6);
+        assertThat(product.get(4)).isEqualTo(ImmutableList.of("2", "arch"));
+        assertThat(product.stream().toList()).isEqualTo(ImmutableList.copyOf(Sets.cartesianProduct(first, second)));
+    }
+
+    @Test
+    public void testCartesianProductParallel() {
+        Set<Integer> digits = ContiguousSet.closedOpen(0, 10);
+        CartesianProduct<Integer> product = CartesianProduct.of(digits, digits, digits, digits, digits);
+        assertThat(product.size()).isEqualTo(100_000);
+        assertThat(product.get(31_337)).containsExactly(3, 1, 3, 3, 7);
+        assertThat(product.parallelStream()
+                .map(tuple -> tuple.stream().reduce(0, (number, digit) -> number * 10 + digit))
+                .toList())
+                .isEqualTo(IntStream.range(0, 100_000).boxed().toList());
+        assertThat(CartesianProduct.of(digits, ImmutableSet.of()).stream()).isEmpty();
     }
 
     @Test
@@ -55,6 +84,30 @@ public class SetsTest {
                 .filter(s -> !second.contains(s))
                 .collect(Collectors.toSet()))
                 .containsOnly("bully", "vertex");
+
+        // Lazy view
+        Set<String> difference = SetViews.difference(first, second);
+        assertThat(difference).hasSize(2).containsOnly("bully", "vertex");
+        assertThat(difference.contains("perf")).isFalse();
+        assertThat(difference.stream().spliterator().hasCharacteristics(Spliterator.DISTINCT)).isTrue();
+    }
+
+    @Test
+    public void testIntersection() {
+        assertThat(Sets.intersection(first, second)).containsOnly("tweak", "perf");
+
+        assertThat(first.stream()
+                .filter(second::contains)
+                .collect(Collectors.toSet()))
+                .containsOnly("tweak", "perf");
+
+        assertThat(SetViews.intersection(first, second)).hasSize(2).containsOnly("tweak", "perf");
+        assertThat(SetViews.intersection(second, first).parallelStream().toList()).containsOnly("tweak", "perf");
+
+        // The elements always come from the first set, even when it's the larger one
+        Set<String> caseInsensitive = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.add("PERF");
+        assertThat(SetViews.intersection(first, caseInsensitive)).containsExactly("perf");
     }
 
     @Test
@@ -66,6 +119,41 @@ public class SetsTest {
                 .collect(Collectors.toSet()))
                 .containsOnly("bully", "vertex", "moan");
 
+        assertThat(SetViews.symmetricDifference(first, second)).hasSize(3).containsOnly("bully", "vertex", "moan");
+
+    }
+
+    @Test
+    public void testSortedMerge() {
+        NavigableSet<String> first = ImmutableSortedSet.copyOf(this.first);
+        NavigableSet<String> second = new TreeSet<>(this.second);
+
+        assertThat(SortedSets.union(first, second)).containsExactly("bully", "moan", "perf", "tweak", "vertex");
+        assertThat(SortedSets.intersection(first, second)).containsExactly("perf", "tweak");
+        assertThat(SortedSets.difference(first, second)).containsExactly("bully", "vertex");
+        assertThat(SortedSets.symmetricDifference(first, second)).containsExactly("bully", "moan", "vertex");
+        assertThat(SortedSets.union(first, second).spliterator().hasCharacteristics(Spliterator.SORTED)).isTrue();
+
+        // Reversed order on both sides
+        NavigableSet<String> descendingFirst = ImmutableSortedSet.copyOf(Comparator.reverseOrder(), this.first);
+        NavigableSet<String> descendingSecond = new TreeSet<>(Comparator.reverseOrder());
+        descendingSecond.addAll(this.second);
+        assertThat(SortedSets.union(descendingFirst, descendingSecond))
+                .containsExactly("vertex", "tweak", "perf", "moan", "bully");
+
+        // Different orders fall back to hash probing
+        assertThat(SortedSets.intersection(descendingFirst, second)).containsOnly("perf", "tweak");
+    }
+
+    @Test
+    public void testSortedMergeGalloping() {
+        ImmutableSortedSet<Integer> large = ImmutableSortedSet.copyOf(ContiguousSet.closedOpen(0, 100_000));
+        Set<Integer> small = ImmutableSortedSet.of(-5, 7, 99_999, 100_000, 31_337);
+
+        assertThat(SortedSets.intersection(small, large)).containsExactly(7, 31_337, 99_999);
+        assertThat(SortedSets.intersection(large, small)).containsExactly(7, 31_337, 99_999);
+        assertThat(SortedSets.difference(small, large)).containsExactly(-5, 100_000);
+        assertThat(SortedSets.difference(large, small).count()).isEqualTo(100_000 - 3);
     }
 
     @Test
@@ -73,5 +161,16 @@ public class SetsTest {
         assertThat(Sets.union(first, second)).containsOnly("tweak", "perf", "bully", "vertex", "moan");
         assertThat(Stream.concat(first.stream(), second.stream()).collect(Collectors.toSet()))
                 .containsOnly("tweak", "perf", "bully", "vertex", "moan");
+
+        Set<String> union = SetViews.union(first, second);
+        assertThat(union).hasSize(5).containsOnly("tweak", "perf", "bully", "vertex", "moan");
+        assertThat(union.stream().spliterator().estimateSize()).isEqualTo(7);
+        assertThat(union).isEqualTo(Sets.union(first, second));
+
+        // All of the first set, then the rest of the second one, whichever is larger
+        Set<String> small = ImmutableSet.of("moan", "tweak");
+        assertThat(SetViews.union(first, small)).containsExactlyElementsOf(Sets.union(first, small));
+        assertThat(SetViews.union(small, first)).containsExactlyElementsOf(Sets.union(small, first))
+                .startsWith("moan", "tweak");
     }
 }
@@ -0,0 +1,167 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Ordering;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Resolves keys to values with a bulk loader, like {@code Maps.asMap(keys, loader)} but with one call
+ * per batch of keys instead of one call per key.
+ * <p>
+ * Requested keys are collected into a window, which is sent to the bulk loader as soon as it has
+ * {@code maxBatchSize} keys or {@code maxDelay} after its first key, whichever comes first. A key which
+ * is already waiting in a window or being loaded isn't requested again, its callers share one future.
+ * Nothing is cached after a load completes. Keys missing from the result of the bulk loader resolve
+ * to {@code null}. Batches are loaded on virtual threads, so a blocking bulk loader is fine.
+ * <p>
+ * {@link #asMap} and {@link #asNavigableMap} know all their keys up front, so they send them
+ * right away in batches of {@code maxBatchSize} without waiting for the timer.
+ */
+public class BatchLoader<K, V> implements AutoCloseable {
+
+    private final Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("batch-loader-timer").factory());
+    private final ExecutorService loaders = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Guarded by this
+    private final Map<K, CompletableFuture<V>> inFlight = new HashMap<>();
+    private Map<K, CompletableFuture<V>> window = new LinkedHashMap<>();
+    private ScheduledFuture<?> windowTimer;
+    private boolean closed;
+
+    public BatchLoader(Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader,
+                       int maxBatchSize, Duration maxDelay) {
+        Preconditions.checkArgument(maxBatchSize > 0, "Max batch size should be positive, got %s", maxBatchSize);
+        Preconditions.checkArgument(!maxDelay.isNegative(), "Max delay should be non-negative, got %s", maxDelay);
+        this.bulkLoader = bulkLoader;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    /**
+     * @return the future value of the key, completed when the batch with the key is loaded
+     * @throws IllegalStateException if the loader has been closed
+     */
+    public synchronized CompletableFuture<V> load(K key) {
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkState(!closed, "Batch loader is closed");
+        CompletableFuture<V> future = inFlight.get(key);
+        if (future != null) {
+            return future;
+        }
+        future = new CompletableFuture<>();
+        inFlight.put(key, future);
+        window.put(key, future);
+        if (window.size() >= maxBatchSize) {
+            dispatch();
+        } else if (windowTimer == null) {
+            windowTimer = timer.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the current window to the bulk loader without waiting for it to fill up
+     */
+    public synchronized void flush() {
+        if (!window.isEmpty()) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Loads the keys and copies the present values to an immutable map in the order of the keys
+     */
+    public ImmutableMap<K, V> asMap(Set<K> keys) {
+        return collect(keys, ImmutableMap.builderWithExpectedSize(keys.size()));
+    }
+
+    /**
+     * Loads the keys and copies the present values to an immutable map sorted like the keys
+     */
+    @SuppressWarnings("unchecked")
+    public ImmutableSortedMap<K, V> asNavigableMap(SortedSet<K> keys) {
+        Comparator<K> comparator = keys.comparator() != null ? (Comparator<K>) keys.comparator() : (Comparator<K>) Ordering.natural();
+        ImmutableSortedMap.Builder<K, V> builder = ImmutableSortedMap.orderedBy(comparator);
+        return (ImmutableSortedMap<K, V>) collect(keys, builder);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            flush();
+        }
+        timer.shutdownNow();
+        loaders.close();
+    }
+
+    private ImmutableMap<K, V> collect(Set<K> keys, ImmutableMap.Builder<K, V> builder) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        synchronized (this) {
+            for (K key : keys) {
+                futures.put(key, load(key));
+            }
+            flush();
+        }
+        futures.forEach((key, future) -> {
+            V value = future.join();
+            if (value != null) {
+                builder.put(key, value);
+            }
+        });
+        return builder.build();
+    }
+
+    private void dispatch() {
+        Map<K, CompletableFuture<V>> batch = window;
+        window = new LinkedHashMap<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        loaders.execute(() -> loadBatch(batch));
+    }
+
+    private void loadBatch(Map<K, CompletableFuture<V>> batch) {
+        Map<? extends K, ? extends V> values;
+        try {
+            values = Objects.requireNonNull(bulkLoader.apply(Collections.unmodifiableSet(batch.keySet())),
+                    "Bulk loader returned null");
+        } catch (Throwable e) {
+            release(batch);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+        release(batch);
+        batch.forEach((key, future) -> future.complete(values.get(key)));
+    }
+
+    /**
+     * Lets the keys of the batch be requested again, before their futures complete
+     */
+    private synchronized void release(Map<K, CompletableFuture<V>> batch) {
+        inFlight.keySet().removeAll(batch.keySet());
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Collectors which keep a bounded number of elements, however long the stream is.
+ * <p>
+ * {@link #lastN(int)} keeps the elements in a ring buffer and {@link #topK(int, Comparator)} in a heap of
+ * the given size, both merge correctly in parallel. The stream versions of {@code last} and {@code lastN}
+ * don't even traverse a stream straight over a sized source, like a {@code list.stream()}, they split
+ * the source and skip the prefixes until only the needed elements are left.
+ */
+public class BoundedCollectors {
+
+    private BoundedCollectors() {
+    }
+
+    /**
+     * @return the last element of the stream, like {@code reduce((l, r) -> r)}
+     */
+    public static <T> Collector<T, ?, Optional<T>> last() {
+        return Collector.<T, LastN<T>, Optional<T>>of(() -> new LastN<>(1),
+                LastN::add,
+                LastN::addAll,
+                lastN -> lastN.count == 0 ? Optional.empty() : Optional.of(lastN.get(0)));
+    }
+
+    /**
+     * @return the last {@code n} elements of the stream in the encounter order
+     */
+    public static <T> Collector<T, ?, List<T>> lastN(int n) {
+        Preconditions.checkArgument(n >= 0, "Number of elements should be non-negative, got %s", n);
+        return Collector.of(() -> new LastN<T>(n),
+                LastN::add,
+                LastN::addAll,
+                LastN::toList);
+    }
+
+    /**
+     * @return the {@code k} greatest elements of the stream by the comparator, the greatest first
+     */
+    public static <T> Collector<T, ?, List<T>> topK(int k, Comparator<? super T> comparator) {
+        Preconditions.checkArgument(k >= 0, "Number of elements should be non-negative, got %s", k);
+        return Collector.of(() -> new TopK<T>(k, comparator),
+                TopK::add,
+                TopK::addAll,
+                TopK::toList);
+    }
+
+    /**
+     * @return the last element of the stream, skipping to it right away if the source is sized
+     */
+    public static <T> Optional<T> last(Stream<T> stream) {
+        List<T> last = lastN(stream, 1);
+        return last.isEmpty() ? Optional.empty() : Optional.of(last.get(0));
+    }
+
+    /**
+     * @return the last {@code n} elements of the stream, skipping to them right away if the source is sized
+     */
+    public static <T> List<T> lastN(Stream<T> stream, int n) {
+        Preconditions.checkArgument(n >= 0, "Number of elements should be non-negative, got %s", n);
+        try (stream) {
+            List<T> result = new ArrayList<>(n);
+            lastN(stream.spliterator(), n, result);
+            return result;
+        }
+    }
+
+    private static <T> void lastN(Spliterator<T> spliterator, int n, List<T> result) {
+        if (n == 0) {
+            return;
+        }
+        while (spliterator.hasCharacteristics(Spliterator.SUBSIZED) && spliterator.getExactSizeIfKnown() > n) {
+            Spliterator<T> prefix = spliterator.trySplit();
+            if (prefix == null) {
+                break;
+            }
+            long suffixSize = spliterator.getExactSizeIfKnown();
+            if (suffixSize < n) {
+                // The tail of the prefix is needed as well
+                lastN(prefix, (int) (n - suffixSize), result);
+                spliterator.forEachRemaining(result::add);
+                return;
+            }
+        }
+        LastN<T> lastN = new LastN<>(n);
+        spliterator.forEachRemaining(lastN::add);
+        result.addAll(lastN.toList());
+    }
+
+    /**
+     * A ring buffer of the last elements
+     */
+    private static class LastN<T> {
+
+        private final Object[] elements;
+        private long count;
+
+        LastN(int n) {
+            this.elements = new Object[n];
+        }
+
+        void add(T element) {
+            if (elements.length > 0) {
+                elements[(int) (count % elements.length)] = element;
+                count++;
+            }
+        }
+
+        LastN<T> addAll(LastN<T> other) {
+            other.toList().forEach(this::add);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int index) {
+            int size = (int) Math.min(count, elements.length);
+            int start = (int) ((count - size) % Math.max(elements.length, 1));
+            return (T) elements[(start + index) % elements.length];
+        }
+
+        List<T> toList() {
+            int size = (int) Math.min(count, elements.length);
+            List<T> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(get(i));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * A min-heap of the greatest elements, the least of them is the first to go
+     */
+    private static class TopK<T> {
+
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private final PriorityQueue<T> heap;
+
+        TopK(int k, Comparator<? super T> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+            this.heap = new PriorityQueue<>(Math.max(k, 1), comparator);
+        }
+
+        void add(T element) {
+            if (heap.size() < k) {
+                heap.add(element);
+            } else if (k > 0 && comparator.compare(element, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(element);
+            }
+        }
+
+        TopK<T> addAll(TopK<T> other) {
+            other.heap.forEach(this::add);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> toList() {
+            T[] elements = (T[]) heap.toArray();
+            Arrays.sort(elements, Collections.reverseOrder(comparator));
+            return Arrays.asList(elements);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.arteam.jgcompare.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Removes elements from a random-access list, like {@code Iterables.removeAll}, {@code retainAll}
+ * and {@code removeIf}, in two linear passes.
+ * <p>
+ * The first pass marks the elements to remove in a bitset, 64 elements per word, in parallel for large
+ * lists, so the predicate should be thread-safe. Nothing is changed if the predicate throws. The second pass
+ * moves the surviving elements into place in their order and truncates the list with one range removal.
+ * A collection of elements to remove or retain is looked up as is if it's a set, a sorted set keeps
+ * its comparator, and any other collection is copied to a hash set first, so the lookup doesn't scan a list
+ * for every element. Lists without random access are handled by {@link Collection#removeIf}.
+ */
+public class BulkMutations {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int LINEAR_PROBE_LIMIT = 8;
+
+    private BulkMutations() {
+    }
+
+    /**
+     * @return whether any elements have been removed
+     */
+    public static boolean removeAll(List<?> list, Collection<?> elementsToRemove) {
+        Collection<?> probe = probe(elementsToRemove);
+        return removeIf(list, probe::contains);
+    }
+
+    /**
+     * @return whether any elements have been removed
+     */
+    public static boolean retainAll(List<?> list, Collection<?> elementsToRetain) {
+        Collection<?> probe = probe(elementsToRetain);
+        return removeIf(list, element -> !probe.contains(element));
+    }
+
+    /**
+     * @return whether any elements have been removed
+     */
+    public static <T> boolean removeIf(List<T> list, Predicate<? super T> predicate) {
+        if (!(list instanceof RandomAccess)) {
+            return list.removeIf(predicate);
+        }
+        int size = list.size();
+        BitSet victims = mark(list, predicate);
+        int write = victims.nextSetBit(0);
+        if (write < 0) {
+            return false;
+        }
+        // Copy the runs of survivors between the victims
+        int read = victims.nextClearBit(write);
+        while (read < size) {
+            int runEnd = victims.nextSetBit(read);
+            if (runEnd < 0) {
+                runEnd = size;
+            }
+            for (; read < runEnd; read++) {
+                list.set(write++, list.get(read));
+            }
+            read = victims.nextClearBit(runEnd);
+        }
+        list.subList(write, size).clear();
+        return true;
+    }
+
+    /**
+     * Shrinks the backing array of an {@link ArrayList} to its size, after a large removal
+     */
+    public static void trimToSize(List<?> list) {
+        if (list instanceof ArrayList<?> arrayList) {
+            arrayList.trimToSize();
+        }
+    }
+
+    private static <T> BitSet mark(List<T> list, Predicate<? super T> predicate) {
+        int size = list.size();
+        long[] words = new long[(size + 63) >>> 6];
+        IntStream wordIndices = IntStream.range(0, words.length);
+        if (size >= PARALLEL_THRESHOLD) {
+            wordIndices = wordIndices.parallel();
+        }
+        // Every word is written by one task only
+        wordIndices.forEach(word -> {
+            long bits = 0;
+            for (int i = word << 6, end = Math.min(size, i + 64); i < end; i++) {
+                if (predicate.test(list.get(i))) {
+                    bits |= 1L << i;
+                }
+            }
+            words[word] = bits;
+        });
+        return BitSet.valueOf(words);
+    }
+
+    private static Collection<?> probe(Collection<?> elements) {
+        if (elements instanceof Set<?> || elements.size() <= LINEAR_PROBE_LIMIT) {
+            return elements;
+        }
+        return new HashSet<>(elements);
+    }
+}
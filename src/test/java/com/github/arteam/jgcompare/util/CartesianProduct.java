@@ -0,0 +1,200 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazy N-ary Cartesian product of sets, a stream-side counterpart of {@code Sets.cartesianProduct}.
+ * <p>
+ * Tuples are numbered in the lexicographic order with the last set changing the fastest, and the tuple
+ * with a given number is computed from the number in the mixed radix of the set sizes. The product is
+ * never materialized: the spliterator is {@code SIZED} and splits its range of numbers exactly in half,
+ * and sequential traversal advances the digits like an odometer without any division.
+ */
+public class CartesianProduct<E> {
+
+    private final Object[][] axes;
+    private final long size;
+
+    private CartesianProduct(Object[][] axes) {
+        this.axes = axes;
+        long size = 1;
+        for (Object[] axis : axes) {
+            try {
+                size = Math.multiplyExact(size, axis.length);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Cartesian product is too large: more than " + Long.MAX_VALUE + " tuples");
+            }
+        }
+        this.size = size;
+    }
+
+    public static <E> CartesianProduct<E> of(List<? extends Set<? extends E>> sets) {
+        return new CartesianProduct<>(sets.stream()
+                .map(set -> ImmutableList.copyOf(set).toArray())
+                .toArray(Object[][]::new));
+    }
+
+    @SafeVarargs
+    public static <E> CartesianProduct<E> of(Set<? extends E>... sets) {
+        Object[][] axes = new Object[sets.length][];
+        for (int i = 0; i < sets.length; i++) {
+            axes[i] = ImmutableList.copyOf(sets[i]).toArray();
+        }
+        return new CartesianProduct<>(axes);
+    }
+
+    /**
+     * @return the number of tuples in the product
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the tuple with the given number in the lexicographic order
+     */
+    public List<E> get(long index) {
+        Objects.checkIndex(index, size);
+        Object[] tuple = new Object[axes.length];
+        for (int i = axes.length - 1; i >= 0; i--) {
+            int radix = axes[i].length;
+            tuple[i] = axes[i][(int) (index % radix)];
+            index /= radix;
+        }
+        return new Tuple<>(tuple);
+    }
+
+    public Stream<List<E>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<List<E>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public Spliterator<List<E>> spliterator() {
+        return new ProductSpliterator(0, size);
+    }
+
+    private static class Tuple<E> extends AbstractList<E> implements RandomAccess {
+
+        private final Object[] elements;
+
+        Tuple(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+
+    /**
+     * Covers the tuples from {@code from} inclusive to {@code to} exclusive. The digits of the current
+     * tuple are computed on the first advance, the spliterator may be split many times before that.
+     */
+    private class ProductSpliterator implements Spliterator<List<E>> {
+
+        private long from;
+        private final long to;
+        private int[] digits;
+
+        ProductSpliterator(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<E>> action) {
+            if (from >= to) {
+                return false;
+            }
+            if (digits == null) {
+                digits = digits(from);
+            }
+            action.accept(current());
+            from++;
+            increment();
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super List<E>> action) {
+            if (from >= to) {
+                return;
+            }
+            if (digits == null) {
+                digits = digits(from);
+            }
+            for (; from < to; from++) {
+                action.accept(current());
+                increment();
+            }
+        }
+
+        @Override
+        public Spliterator<List<E>> trySplit() {
+            if (digits != null || to - from < 2) {
+                return null;
+            }
+            long middle = from + ((to - from) >>> 1);
+            ProductSpliterator prefix = new ProductSpliterator(from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL | DISTINCT;
+        }
+
+        private List<E> current() {
+            Object[] tuple = new Object[axes.length];
+            for (int i = 0; i < axes.length; i++) {
+                tuple[i] = axes[i][digits[i]];
+            }
+            return new Tuple<>(tuple);
+        }
+
+        private void increment() {
+            for (int i = axes.length - 1; i >= 0; i--) {
+                if (++digits[i] < axes[i].length) {
+                    return;
+                }
+                digits[i] = 0;
+            }
+        }
+
+        private int[] digits(long index) {
+            int[] digits = new int[axes.length];
+            for (int i = axes.length - 1; i >= 0; i--) {
+                int radix = axes[i].length;
+                digits[i] = (int) (index % radix);
+                index /= radix;
+            }
+            return digits;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * An immutable list multimap for a few keys and a lot of values.
+ * <p>
+ * Each distinct key is stored once in a dictionary, all the values are stored in one flat array
+ * grouped by key, and every key owns a range of the array. The lists returned for a key are views
+ * of its range. Keys and values keep the order in which they were first met, like
+ * {@code Multimaps.index} does.
+ */
+public class ColumnarMultimap<K, V> {
+
+    private final Object[] values;
+    private final int[] offsets;
+    private final ImmutableMap<K, List<V>> map;
+
+    private ColumnarMultimap(List<K> keys, Object[] values, int[] offsets) {
+        this.values = values;
+        this.offsets = offsets;
+        ImmutableMap.Builder<K, List<V>> builder = ImmutableMap.builderWithExpectedSize(keys.size());
+        for (int code = 0; code < keys.size(); code++) {
+            builder.put(keys.get(code), new Slice<>(values, offsets[code], offsets[code + 1]));
+        }
+        this.map = builder.build();
+    }
+
+    /**
+     * Groups the elements by the key function in one pass, the elements become the values.
+     */
+    public static <K, V> Collector<V, ?, ColumnarMultimap<K, V>> index(Function<? super V, ? extends K> keyFunction) {
+        return Collector.of(Accumulator<K, V>::new,
+                (acc, value) -> acc.add(keyFunction.apply(value), value),
+                Accumulator::addAll,
+                Accumulator::build);
+    }
+
+    /**
+     * @return the values for the key in the encounter order or an empty list if there are none
+     */
+    public List<V> get(K key) {
+        return map.getOrDefault(key, List.of());
+    }
+
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * @return a map from every key to the view of its values
+     */
+    public Map<K, List<V>> asMap() {
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof ColumnarMultimap<?, ?> other && map.equals(other.map);
+    }
+
+    @Override
+    public int hashCode() {
+        return map.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return map.toString();
+    }
+
+    private static class Slice<V> extends AbstractList<V> implements RandomAccess {
+
+        private final Object[] values;
+        private final int from;
+        private final int to;
+
+        Slice(Object[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(int index) {
+            Objects.checkIndex(index, to - from);
+            return (V) values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * Keeps the values in the encounter order along with the codes of their keys.
+     * The values are sorted by the codes with a counting sort on build.
+     */
+    private static class Accumulator<K, V> {
+
+        private final Map<K, Integer> codes = new HashMap<>();
+        private final List<K> keys = new ArrayList<>();
+        private int[] keyCodes = new int[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        void add(K key, V value) {
+            Integer code = codes.get(key);
+            if (code == null) {
+                code = keys.size();
+                codes.put(key, code);
+                keys.add(key);
+            }
+            if (size == values.length) {
+                int capacity = Math.max(size + (size >> 1), 16);
+                keyCodes = Arrays.copyOf(keyCodes, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            keyCodes[size] = code;
+            values[size++] = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        Accumulator<K, V> addAll(Accumulator<K, V> other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.keys.get(other.keyCodes[i]), (V) other.values[i]);
+            }
+            return this;
+        }
+
+        ColumnarMultimap<K, V> build() {
+            int[] offsets = new int[keys.size() + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[keyCodes[i] + 1]++;
+            }
+            for (int code = 0; code < keys.size(); code++) {
+                offsets[code + 1] += offsets[code];
+            }
+            int[] positions = Arrays.copyOf(offsets, keys.size());
+            Object[] grouped = new Object[size];
+            for (int i = 0; i < size; i++) {
+                grouped[positions[keyCodes[i]]++] = values[i];
+            }
+            return new ColumnarMultimap<>(keys, grouped, offsets);
+        }
+    }
+}
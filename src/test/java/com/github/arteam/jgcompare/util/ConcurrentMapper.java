@@ -0,0 +1,184 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Maps a stream with a blocking function, like a remote or a disk lookup, on virtual threads.
+ * <p>
+ * A parallel stream runs the mapper on the common pool, which has as many threads as there are cores,
+ * so a blocking mapper makes only a handful of calls at a time and starves other users of the pool.
+ * Here every element is mapped on its own virtual thread, with at most {@code maxConcurrency} calls
+ * in flight. The source is pulled lazily as calls complete. The ordered stage emits the results in
+ * the encounter order of the source, the unordered one emits them as soon as they are ready.
+ * <p>
+ * A failure of the mapper is rethrown to the consumer and cancels the calls in flight, as does
+ * an interruption of the consumer. Close the stream, e.g. with try-with-resources, to cancel the
+ * calls in flight after a short-circuiting operation like {@code findFirst}.
+ */
+public class ConcurrentMapper {
+
+    private ConcurrentMapper() {
+    }
+
+    /**
+     * Maps the elements concurrently and emits the results in the encounter order of the stream
+     */
+    public static <T, R> Stream<R> mapConcurrent(Stream<T> stream, int maxConcurrency, Function<? super T, ? extends R> mapper) {
+        return map(stream, maxConcurrency, mapper, true);
+    }
+
+    /**
+     * Maps the elements concurrently and emits the results in the order of completion
+     */
+    public static <T, R> Stream<R> mapConcurrentUnordered(Stream<T> stream, int maxConcurrency,
+                                                          Function<? super T, ? extends R> mapper) {
+        return map(stream, maxConcurrency, mapper, false);
+    }
+
+    /**
+     * Loads the values of the keys concurrently, like {@code Maps.asMap(keys, loader)} copied to
+     * an immutable map, which iterates in the order of the keys
+     */
+    public static <K, V> ImmutableMap<K, V> asMap(Set<K> keys, int maxConcurrency, Function<? super K, ? extends V> loader) {
+        try (Stream<Map.Entry<K, V>> entries = mapConcurrent(keys.stream(), maxConcurrency,
+                key -> Map.entry(key, loader.apply(key)))) {
+            return entries.collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+        }
+    }
+
+    private static <T, R> Stream<R> map(Stream<T> stream, int maxConcurrency, Function<? super T, ? extends R> mapper,
+                                        boolean ordered) {
+        Preconditions.checkArgument(maxConcurrency > 0, "Max concurrency should be positive, got %s", maxConcurrency);
+        MappingSpliterator<T, R> spliterator = new MappingSpliterator<>(stream.spliterator(), maxConcurrency, mapper, ordered);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::cancel)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Keeps up to {@code maxConcurrency} calls in flight and hands out their results. All the state
+     * except the queue of completed calls is confined to the consuming thread.
+     */
+    private static class MappingSpliterator<T, R> extends Spliterators.AbstractSpliterator<R> {
+
+        private final Spliterator<T> source;
+        private final int maxConcurrency;
+        private final Function<? super T, ? extends R> mapper;
+        private final boolean ordered;
+        // Created on the first submitted call, shut down as soon as the source is exhausted
+        private ExecutorService executor;
+        // In the encounter order
+        private final Set<Call> inFlight = new LinkedHashSet<>();
+        private final BlockingQueue<Call> completed = new LinkedBlockingQueue<>();
+        private boolean sourceExhausted;
+        private boolean cancelled;
+
+        MappingSpliterator(Spliterator<T> source, int maxConcurrency, Function<? super T, ? extends R> mapper,
+                           boolean ordered) {
+            super(source.estimateSize(), ordered ? source.characteristics() & ORDERED : 0);
+            this.source = source;
+            this.maxConcurrency = maxConcurrency;
+            this.mapper = mapper;
+            this.ordered = ordered;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (cancelled) {
+                return false;
+            }
+            while (!sourceExhausted && inFlight.size() < maxConcurrency) {
+                if (!source.tryAdvance(this::submit)) {
+                    sourceExhausted = true;
+                    // The calls in flight still run to completion
+                    if (executor != null) {
+                        executor.shutdown();
+                    }
+                }
+            }
+            if (inFlight.isEmpty()) {
+                return false;
+            }
+            try {
+                Call call = ordered ? inFlight.iterator().next() : completed.take();
+                inFlight.remove(call);
+                action.accept(call.get());
+                return true;
+            } catch (ExecutionException e) {
+                cancel();
+                throw unchecked(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new CancellationException("Interrupted while waiting for the mapper");
+            }
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            // The calls are already concurrent, splitting would only drain the window
+            return null;
+        }
+
+        void cancel() {
+            cancelled = true;
+            inFlight.forEach(call -> call.cancel(true));
+            inFlight.clear();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        private void submit(T element) {
+            Call call = new Call(element);
+            inFlight.add(call);
+            if (executor == null) {
+                executor = Executors.newVirtualThreadPerTaskExecutor();
+            }
+            executor.execute(call);
+        }
+
+        private static RuntimeException unchecked(Throwable cause) {
+            if (cause instanceof RuntimeException runtimeException) {
+                return runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            return new CompletionException(cause);
+        }
+
+        private class Call extends FutureTask<R> {
+
+            Call(T element) {
+                super(() -> mapper.apply(element));
+            }
+
+            @Override
+            protected void done() {
+                if (!ordered) {
+                    completed.add(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.stream.Collector;
+
+/**
+ * Approximate counts of elements from an unbounded key set in a fixed amount of memory.
+ * <p>
+ * Every element increments one counter in each of the {@code depth} rows of {@code width} counters.
+ * The estimate is the least of its counters, which is never below the real count and, with the given
+ * confidence, exceeds it by no more than {@code epsilon} times the total number of added elements.
+ * Sketches of the same dimensions merge by summing up the counters, so they can be built in parallel.
+ */
+public class CountMinSketch<T> {
+
+    private final int width;
+    private final int depth;
+    private final int[] table;
+    private long totalCount;
+
+    private CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.table = new int[Math.multiplyExact(width, depth)];
+    }
+
+    /**
+     * @param epsilon    the error of the estimates relative to the total count
+     * @param confidence the probability for an estimate to stay within the error
+     */
+    public static <T> CountMinSketch<T> withError(double epsilon, double confidence) {
+        Preconditions.checkArgument(epsilon > 0 && epsilon < 1, "Epsilon should be in (0, 1), got %s", epsilon);
+        Preconditions.checkArgument(confidence > 0 && confidence < 1, "Confidence should be in (0, 1), got %s", confidence);
+        int width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / (1 - confidence)));
+        return new CountMinSketch<>(Integer.highestOneBit(width - 1) << 1, Math.max(depth, 1));
+    }
+
+    /**
+     * Counts the elements of the stream approximately
+     */
+    public static <T> Collector<T, ?, CountMinSketch<T>> counting(double epsilon, double confidence) {
+        return Collector.of(() -> withError(epsilon, confidence),
+                CountMinSketch::add,
+                CountMinSketch::addAll,
+                Collector.Characteristics.IDENTITY_FINISH, Collector.Characteristics.UNORDERED);
+    }
+
+    public void add(T element) {
+        long hash = hash(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((h1 + row * h2) & (width - 1));
+            if (table[index] != Integer.MAX_VALUE) {
+                table[index]++;
+            }
+        }
+        totalCount++;
+    }
+
+    /**
+     * @return the estimated count of the element, never less than the real one
+     */
+    public int estimate(Object element) {
+        long hash = hash(element);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, table[row * width + ((h1 + row * h2) & (width - 1))]);
+        }
+        return estimate;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public CountMinSketch<T> addAll(CountMinSketch<T> other) {
+        Preconditions.checkArgument(width == other.width && depth == other.depth,
+                "Sketches have different dimensions: %sx%s and %sx%s", depth, width, other.depth, other.width);
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (int) Math.min((long) table[i] + other.table[i], Integer.MAX_VALUE);
+        }
+        totalCount += other.totalCount;
+        return this;
+    }
+
+    /**
+     * Halves all the counters, so the sketch forgets old occurrences and follows recent ones
+     */
+    public void halve() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        totalCount >>>= 1;
+    }
+
+    private static long hash(Object element) {
+        long h = (element == null ? 0 : element.hashCode()) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+}
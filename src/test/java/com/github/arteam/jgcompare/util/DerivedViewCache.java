@@ -0,0 +1,344 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Multimap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A cache of views derived from sources, like {@code Maps.uniqueIndex(teams, Team::id)} of a list of teams,
+ * which rebuilds a view only when its source is new or has changed.
+ * <p>
+ * A derivation is registered once with {@link #view(Function)}. Its views are keyed by the identity of the
+ * source and a version, which the caller bumps when a mutable source changes. The total weight of the views,
+ * the size of a collection or a map by default, is bounded with the W-TinyLFU policy: new views enter a small
+ * LRU window, and a view leaving the window replaces the least recent view of the main space only if it has
+ * been used more often according to a {@link CountMinSketch} of recent accesses. The main space is split
+ * into a probation and a protected segment, so a scan over many one-off sources can't flush the views which
+ * are used all the time. The cache holds strong references to the sources of its views.
+ * <p>
+ * All the bookkeeping is done under a lock, the derivations run outside of it. Concurrent misses of the same
+ * view may derive it more than once, the last result is kept.
+ */
+public class DerivedViewCache {
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ToIntFunction<Object> weigher;
+    private final Executor refreshExecutor;
+
+    // Guarded by this
+    private final Map<Key, Node> nodes = new HashMap<>();
+    private final LinkedHashSet<Node> window = new LinkedHashSet<>();
+    private final LinkedHashSet<Node> probation = new LinkedHashSet<>();
+    private final LinkedHashSet<Node> protectedSegment = new LinkedHashSet<>();
+    private final CountMinSketch<Key> frequencies = CountMinSketch.withError(0.001, 0.99);
+    private final long sampleSize;
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private long hits;
+    private long misses;
+    private long loads;
+    private long loadNanos;
+    private long evictions;
+
+    public DerivedViewCache(long maximumWeight) {
+        this(maximumWeight, DerivedViewCache::defaultWeight, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param weigher         the weight of a view
+     * @param refreshExecutor runs the derivations of {@link View#getOrRefresh}
+     */
+    public DerivedViewCache(long maximumWeight, ToIntFunction<Object> weigher, Executor refreshExecutor) {
+        Preconditions.checkArgument(maximumWeight > 0, "Maximum weight should be positive, got %s", maximumWeight);
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * PROTECTED_PERCENT / 100;
+        this.weigher = weigher;
+        this.refreshExecutor = refreshExecutor;
+        this.sampleSize = 10L * (long) Math.ceil(Math.E / 0.001);
+    }
+
+    /**
+     * Registers a derivation, its views are cached until evicted
+     */
+    public <S, V> View<S, V> view(Function<? super S, ? extends V> derivation) {
+        return new View<>(derivation);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, loads, loadNanos, evictions);
+    }
+
+    public synchronized long weight() {
+        return windowWeight + probationWeight + protectedWeight;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Counters of the cache since its creation
+     */
+    public record Stats(long hits, long misses, long loads, long totalLoadNanos, long evictions) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        public double averageLoadNanos() {
+            return loads == 0 ? 0.0 : (double) totalLoadNanos / loads;
+        }
+    }
+
+    public class View<S, V> {
+
+        private final Function<? super S, ? extends V> derivation;
+
+        private View(Function<? super S, ? extends V> derivation) {
+            this.derivation = derivation;
+        }
+
+        /**
+         * @return the view of an immutable source
+         */
+        public V get(S source) {
+            return get(source, 0);
+        }
+
+        /**
+         * @return the view of the given version of the source, derived again if the cached one is older
+         */
+        public V get(S source, long version) {
+            Key key = new Key(this, source);
+            Node cached = lookup(key, version, false);
+            if (cached != null) {
+                return value(cached);
+            }
+            return load(key, source, version);
+        }
+
+        /**
+         * Like {@link #get(Object, long)}, but a view of an older version is returned right away
+         * while the new one is derived in the background
+         */
+        public V getOrRefresh(S source, long version) {
+            Key key = new Key(this, source);
+            Node cached = lookup(key, version, true);
+            if (cached == null) {
+                return load(key, source, version);
+            }
+            if (cached.version != version && cached.startRefresh()) {
+                refreshExecutor.execute(() -> {
+                    try {
+                        load(key, source, version);
+                    } finally {
+                        cached.refreshing = false;
+                    }
+                });
+            }
+            return value(cached);
+        }
+
+        private V load(Key key, S source, long version) {
+            long start = System.nanoTime();
+            V value = derivation.apply(source);
+            long elapsed = System.nanoTime() - start;
+            store(key, value, version, elapsed);
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V value(Node node) {
+            return (V) node.value;
+        }
+    }
+
+    /**
+     * @return the node of the key if it's of the version or, if stale nodes are accepted, of any version
+     */
+    private synchronized Node lookup(Key key, long version, boolean acceptStale) {
+        recordAccess(key);
+        Node node = nodes.get(key);
+        if (node == null || node.version != version && !acceptStale) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node;
+    }
+
+    private synchronized void store(Key key, Object value, long version, long elapsed) {
+        loads++;
+        loadNanos += elapsed;
+        Node existing = nodes.get(key);
+        if (existing != null && existing.version > version) {
+            // A newer version has been stored in the meantime
+            return;
+        }
+        if (existing != null) {
+            remove(existing);
+        }
+        int weight = weigher.applyAsInt(value);
+        if (weight > maximumWeight) {
+            return;
+        }
+        Node node = new Node(key, value, version, weight);
+        nodes.put(key, node);
+        node.segment = window;
+        window.add(node);
+        windowWeight += weight;
+        evict();
+    }
+
+    private void recordAccess(Key key) {
+        frequencies.add(key);
+        if (frequencies.totalCount() >= sampleSize) {
+            frequencies.halve();
+        }
+    }
+
+    private void onHit(Node node) {
+        if (node.segment == probation) {
+            // A second hit promotes a view to the protected segment
+            probation.remove(node);
+            probationWeight -= node.weight;
+            node.segment = protectedSegment;
+            protectedSegment.add(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedSegment.size() > 1) {
+                Node demoted = protectedSegment.iterator().next();
+                protectedSegment.remove(demoted);
+                protectedWeight -= demoted.weight;
+                demoted.segment = probation;
+                probation.add(demoted);
+                probationWeight += demoted.weight;
+            }
+        } else {
+            // Move to the most recent position
+            node.segment.remove(node);
+            node.segment.add(node);
+        }
+    }
+
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node candidate = window.iterator().next();
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            candidate.segment = probation;
+            probation.add(candidate);
+            probationWeight += candidate.weight;
+            admit(candidate);
+        }
+    }
+
+    /**
+     * Evicts either the candidate or the least recent views of the main space, by their frequencies
+     */
+    private void admit(Node candidate) {
+        while (weight() > maximumWeight) {
+            Iterator<Node> victims = probation.iterator();
+            Node victim = victims.next();
+            if (victim == candidate) {
+                Node next = victims.hasNext() ? victims.next() : null;
+                if (next == candidate || next == null) {
+                    victim = protectedSegment.isEmpty() ? candidate : protectedSegment.iterator().next();
+                } else {
+                    victim = next;
+                }
+            }
+            if (victim != candidate && frequencies.estimate(candidate.key) <= frequencies.estimate(victim.key)) {
+                victim = candidate;
+            }
+            remove(victim);
+            evictions++;
+            if (victim == candidate) {
+                return;
+            }
+        }
+    }
+
+    private void remove(Node node) {
+        nodes.remove(node.key);
+        node.segment.remove(node);
+        if (node.segment == window) {
+            windowWeight -= node.weight;
+        } else if (node.segment == probation) {
+            probationWeight -= node.weight;
+        } else {
+            protectedWeight -= node.weight;
+        }
+    }
+
+    private static int defaultWeight(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return map.size();
+        }
+        if (value instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (value instanceof Multimap<?, ?> multimap) {
+            return multimap.size();
+        }
+        return 1;
+    }
+
+    /**
+     * A view of a source, both compared by identity
+     */
+    private record Key(View<?, ?> view, Object source) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && view == other.view && source == other.source;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(view) + System.identityHashCode(source);
+        }
+    }
+
+    private static class Node {
+
+        final Key key;
+        final Object value;
+        final long version;
+        final int weight;
+        LinkedHashSet<Node> segment;
+        volatile boolean refreshing;
+
+        Node(Key key, Object value, long version, int weight) {
+            this.key = key;
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+
+        synchronized boolean startRefresh() {
+            if (refreshing) {
+                return false;
+            }
+            refreshing = true;
+            return true;
+        }
+    }
+}
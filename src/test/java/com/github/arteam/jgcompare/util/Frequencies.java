@@ -0,0 +1,130 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collector;
+
+/**
+ * A multiset which counts occurrences of elements in primitive {@code int} counters.
+ * <p>
+ * Elements and counts are kept in two parallel arrays with linear probing, so counting neither boxes
+ * a counter like {@code groupingBy(identity(), counting())} does nor creates a node per element.
+ * Collect the elements once with {@link #counting()} and query as many counts as needed afterwards.
+ * In parallel, every split counts into its own table and the tables are summed up.
+ */
+public class Frequencies<T> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final Object NULL_KEY = new Object();
+
+    private Object[] keys;
+    private int[] counts;
+    private int size;
+    private long totalCount;
+
+    public Frequencies() {
+        this(16);
+    }
+
+    public Frequencies(int expectedSize) {
+        Preconditions.checkArgument(expectedSize >= 0, "Expected size should be non-negative, got %s", expectedSize);
+        int capacity = Integer.highestOneBit(Math.max(2, (int) Math.min((long) (expectedSize / LOAD_FACTOR) + 1, 1 << 30)) - 1) << 1;
+        keys = new Object[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Counts the elements of the stream
+     */
+    public static <T> Collector<T, ?, Frequencies<T>> counting() {
+        return Collector.of(Frequencies<T>::new,
+                Frequencies::add,
+                (left, right) -> left.size >= right.size ? left.addAll(right) : right.addAll(left),
+                Collector.Characteristics.IDENTITY_FINISH, Collector.Characteristics.UNORDERED);
+    }
+
+    public void add(T element) {
+        add(element, 1);
+    }
+
+    public void add(T element, int occurrences) {
+        Preconditions.checkArgument(occurrences >= 0, "Occurrences should be non-negative, got %s", occurrences);
+        if (occurrences == 0) {
+            // An element which has never been counted isn't in the table
+            return;
+        }
+        Object key = element == null ? NULL_KEY : element;
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            if (++size > keys.length * LOAD_FACTOR) {
+                rehash();
+                slot = slot(key);
+            }
+        }
+        counts[slot] = Math.addExact(counts[slot], occurrences);
+        totalCount += occurrences;
+    }
+
+    /**
+     * @return how many times the element has been added, like {@code Iterables.frequency}
+     */
+    public int count(Object element) {
+        int slot = slot(element == null ? NULL_KEY : element);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    /**
+     * @return the number of distinct elements
+     */
+    public int size() {
+        return size;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Performs the action for every distinct element and its count in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjIntConsumer<? super T> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i] == NULL_KEY ? null : (T) keys[i], counts[i]);
+            }
+        }
+    }
+
+    private Frequencies<T> addAll(Frequencies<T> other) {
+        other.forEach(this::add);
+        return this;
+    }
+
+    private int slot(Object key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !Objects.equals(keys[slot], key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new Object[oldKeys.length << 1];
+        counts = new int[oldKeys.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
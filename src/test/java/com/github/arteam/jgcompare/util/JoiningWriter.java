@@ -0,0 +1,350 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Joins the elements of a stream like {@code Collectors.joining(delimiter, prefix, suffix)}, but writes them
+ * straight to an {@link Appendable}, a {@link ByteBuffer} or a {@link WritableByteChannel} instead of building
+ * one big string first.
+ * <p>
+ * A sequential stream is written element by element. A parallel stream is split into chunks, which are
+ * rendered independently on the common pool and written in the encounter order as they become ready.
+ * Only a window of chunks, as many as the pool has threads, is rendered ahead of the target, so a slow
+ * target doesn't make the whole text pile up in memory.
+ * A {@link StringBuilder} is presized from the size of a {@code SIZED} stream and the length of its first
+ * element. A {@link Flushable} target, like a {@code Writer}, is flushed every {@code flushEvery} chars.
+ * Channels get the text encoded through a reusable direct buffer. A writer is immutable.
+ */
+public class JoiningWriter {
+
+    private static final int CHANNEL_BUFFER_SIZE = 1 << 16;
+
+    private final String delimiter;
+    private final String prefix;
+    private final String suffix;
+    private final int flushEvery;
+    private final Executor executor;
+    private final int chunksAhead;
+
+    private JoiningWriter(String delimiter, String prefix, String suffix, int flushEvery, Executor executor,
+                          int chunksAhead) {
+        this.delimiter = delimiter;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.flushEvery = flushEvery;
+        this.executor = executor;
+        this.chunksAhead = chunksAhead;
+    }
+
+    public static JoiningWriter joining(CharSequence delimiter) {
+        return joining(delimiter, "", "");
+    }
+
+    public static JoiningWriter joining(CharSequence delimiter, CharSequence prefix, CharSequence suffix) {
+        return new JoiningWriter(delimiter.toString(), prefix.toString(), suffix.toString(), Integer.MAX_VALUE,
+                ForkJoinPool.commonPool(), Math.max(1, ForkJoinPool.getCommonPoolParallelism()));
+    }
+
+    /**
+     * @return a writer which flushes a {@link Flushable} target after every {@code chars} written chars
+     */
+    public JoiningWriter flushEvery(int chars) {
+        Preconditions.checkArgument(chars > 0, "Flush interval should be positive, got %s", chars);
+        return new JoiningWriter(delimiter, prefix, suffix, chars, executor, chunksAhead);
+    }
+
+    /**
+     * @return a writer which renders the chunks of a parallel stream on the executor, at most
+     * {@code chunksAhead} chunks ahead of the one being written
+     */
+    public JoiningWriter renderOn(Executor executor, int chunksAhead) {
+        Preconditions.checkArgument(chunksAhead > 0, "Chunks ahead should be positive, got %s", chunksAhead);
+        return new JoiningWriter(delimiter, prefix, suffix, flushEvery, executor, chunksAhead);
+    }
+
+    public String toString(Stream<?> stream) {
+        try {
+            return writeTo(stream, new StringBuilder()).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public <A extends Appendable> A writeTo(Stream<?> stream, A out) throws IOException {
+        try (stream) {
+            Sink sink = new Sink(out);
+            sink.append(prefix);
+            Spliterator<?> spliterator = stream.spliterator();
+            if (stream.isParallel()) {
+                writeChunks(spliterator, sink);
+            } else {
+                writeSequentially(spliterator, sink, out instanceof StringBuilder builder ? builder : null);
+            }
+            sink.append(suffix);
+            sink.flush();
+            return out;
+        }
+    }
+
+    /**
+     * Encodes the text into the buffer
+     *
+     * @throws BufferOverflowException if the text doesn't fit into the remaining space of the buffer
+     */
+    public ByteBuffer writeTo(Stream<?> stream, ByteBuffer buffer, Charset charset) throws IOException {
+        EncodingAppendable out = new EncodingAppendable(charset.newEncoder(), buffer, null);
+        writeTo(stream, out);
+        out.finish();
+        return buffer;
+    }
+
+    /**
+     * Encodes the text and writes it to the channel a buffer at a time
+     *
+     * @return the number of written bytes
+     */
+    public long writeTo(Stream<?> stream, WritableByteChannel channel, Charset charset) throws IOException {
+        EncodingAppendable out = new EncodingAppendable(charset.newEncoder(), ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE),
+                channel);
+        writeTo(stream, out);
+        out.finish();
+        return out.written;
+    }
+
+    private void writeSequentially(Spliterator<?> spliterator, Sink sink, StringBuilder presizable) throws IOException {
+        long size = spliterator.getExactSizeIfKnown();
+        Iterator<?> elements = Spliterators.iterator(spliterator);
+        if (!elements.hasNext()) {
+            return;
+        }
+        // The length of the first element is the estimate for the others
+        int start = presizable != null ? presizable.length() : 0;
+        sink.appendElement(elements.next());
+        if (presizable != null && size > 1) {
+            long estimate = presizable.length() + (long) (presizable.length() - start + delimiter.length()) * (size - 1)
+                    + suffix.length();
+            presizable.ensureCapacity((int) Math.min(estimate, Integer.MAX_VALUE - 8));
+        }
+        while (elements.hasNext()) {
+            sink.append(delimiter);
+            sink.appendElement(elements.next());
+        }
+    }
+
+    private void writeChunks(Spliterator<?> spliterator, Sink sink) throws IOException {
+        List<Spliterator<?>> chunks = new ArrayList<>();
+        long threshold = Math.max(1, spliterator.estimateSize() / (chunksAhead * 4L));
+        split(spliterator, threshold, chunks);
+        Iterator<Spliterator<?>> pending = chunks.iterator();
+        Deque<CompletableFuture<String>> rendered = new ArrayDeque<>(chunksAhead);
+        AtomicBoolean failed = new AtomicBoolean();
+        while (rendered.size() < chunksAhead && pending.hasNext()) {
+            rendered.add(renderAsync(pending.next(), failed));
+        }
+        boolean first = true;
+        while (!rendered.isEmpty()) {
+            String text;
+            try {
+                text = rendered.poll().join();
+            } catch (CompletionException e) {
+                // Stop rendering the chunks in the window and fail like a sequential stream does
+                failed.set(true);
+                rendered.forEach(future -> future.cancel(false));
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+            if (text != null) {
+                if (!first) {
+                    sink.append(delimiter);
+                }
+                sink.append(text);
+                first = false;
+            }
+            // The next chunk starts rendering only when a written one has been let go
+            if (pending.hasNext()) {
+                rendered.add(renderAsync(pending.next(), failed));
+            }
+        }
+    }
+
+    private CompletableFuture<String> renderAsync(Spliterator<?> chunk, AtomicBoolean failed) {
+        return CompletableFuture.supplyAsync(() -> render(chunk, failed), executor);
+    }
+
+    /**
+     * Splits the spliterator into chunks in the encounter order
+     */
+    private static void split(Spliterator<?> spliterator, long threshold, List<Spliterator<?>> chunks) {
+        Spliterator<?> prefix;
+        if (spliterator.estimateSize() <= threshold || (prefix = spliterator.trySplit()) == null) {
+            chunks.add(spliterator);
+            return;
+        }
+        split(prefix, threshold, chunks);
+        split(spliterator, threshold, chunks);
+    }
+
+    /**
+     * @return the joined elements of the chunk, {@code null} if it's empty
+     */
+    private String render(Spliterator<?> chunk, AtomicBoolean failed) {
+        StringBuilder builder = new StringBuilder();
+        boolean[] empty = {true};
+        Consumer<Object> append = element -> {
+            if (!empty[0]) {
+                builder.append(delimiter);
+            }
+            if (element instanceof CharSequence text) {
+                builder.append(text);
+            } else {
+                builder.append(element);
+            }
+            empty[0] = false;
+        };
+        // The rest of the chunk is abandoned once the writer has failed
+        while (!failed.get() && chunk.tryAdvance(append)) {
+        }
+        return empty[0] ? null : builder.toString();
+    }
+
+    /**
+     * Counts the written chars and flushes the target when enough of them have been written
+     */
+    private class Sink {
+
+        private final Appendable out;
+        private long unflushed;
+
+        Sink(Appendable out) {
+            this.out = out;
+        }
+
+        void appendElement(Object element) throws IOException {
+            append(element instanceof CharSequence text ? text : String.valueOf(element));
+        }
+
+        void append(CharSequence text) throws IOException {
+            out.append(text);
+            unflushed += text.length();
+            if (unflushed >= flushEvery) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (out instanceof Flushable flushable) {
+                flushable.flush();
+            }
+            unflushed = 0;
+        }
+    }
+
+    /**
+     * Encodes the appended text into a byte buffer. With a channel, the buffer is drained to the channel
+     * whenever it's full and on a flush, without one it's the final target.
+     */
+    private static class EncodingAppendable implements Appendable, Flushable {
+
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes;
+        private final WritableByteChannel channel;
+        // A high surrogate whose pair hasn't been appended yet
+        private CharBuffer carry = CharBuffer.allocate(0);
+        long written;
+
+        EncodingAppendable(CharsetEncoder encoder, ByteBuffer bytes, WritableByteChannel channel) {
+            this.encoder = encoder;
+            this.bytes = bytes;
+            this.channel = channel;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) throws IOException {
+            CharBuffer chars = carry.hasRemaining()
+                    ? CharBuffer.wrap(new StringBuilder(carry.length() + text.length()).append(carry).append(text))
+                    : CharBuffer.wrap(text);
+            encode(chars, false);
+            carry = chars.hasRemaining() ? CharBuffer.wrap(chars.toString()) : CharBuffer.allocate(0);
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) throws IOException {
+            return append(text.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            return append(String.valueOf(c));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (channel != null) {
+                drain();
+            }
+        }
+
+        void finish() throws IOException {
+            encode(carry, true);
+            while (encoder.flush(bytes).isOverflow()) {
+                overflow();
+            }
+            flush();
+        }
+
+        private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    overflow();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void overflow() throws IOException {
+            if (channel == null) {
+                throw new BufferOverflowException();
+            }
+            drain();
+        }
+
+        private void drain() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                written += channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
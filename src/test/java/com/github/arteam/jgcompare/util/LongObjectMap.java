@@ -0,0 +1,215 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * A map from primitive {@code long} keys to non-null values.
+ * <p>
+ * Keys and values are kept in two parallel arrays with linear probing, so there is neither a boxed
+ * {@link Long} nor a node object per entry. Entries can't be removed. {@link #freeze()} gives
+ * a read-only copy with the arrays trimmed to the number of entries.
+ */
+public class LongObjectMap<V> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+    private final boolean frozen;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    private LongObjectMap(int expectedSize, boolean frozen) {
+        Preconditions.checkArgument(expectedSize >= 0, "Expected size should be non-negative, got %s", expectedSize);
+        allocate(capacityFor(expectedSize));
+        this.frozen = frozen;
+    }
+
+    /**
+     * Indexes the elements of the stream by the key function, like {@code Maps.uniqueIndex}.
+     * The table is sized once up front if the stream knows its size.
+     *
+     * @throws IllegalArgumentException if two elements have the same key
+     */
+    public static <T> LongObjectMap<T> uniqueIndex(Stream<? extends T> stream, ToLongFunction<? super T> keyFunction) {
+        try (stream) {
+            Spliterator<? extends T> spliterator = stream.spliterator();
+            long exactSize = spliterator.getExactSizeIfKnown();
+            LongObjectMap<T> map = new LongObjectMap<>(exactSize < 0 ? 16 : (int) Math.min(exactSize, MAX_CAPACITY), true);
+            spliterator.forEachRemaining(e -> map.putUnique(keyFunction.applyAsLong(e), e));
+            return map;
+        }
+    }
+
+    /**
+     * Collects the elements to a frozen map indexed by the key function.
+     *
+     * @throws IllegalArgumentException if two elements have the same key
+     */
+    public static <T> Collector<T, ?, LongObjectMap<T>> toUniqueIndex(ToLongFunction<? super T> keyFunction) {
+        return Collector.<T, LongObjectMap<T>, LongObjectMap<T>>of(LongObjectMap::new,
+                (map, e) -> map.putUnique(keyFunction.applyAsLong(e), e),
+                (left, right) -> {
+                    right.forEach((value, key) -> left.putUnique(key, value));
+                    return left;
+                },
+                LongObjectMap::freeze);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public boolean containsKey(long key) {
+        return values[slot(key)] != null;
+    }
+
+    /**
+     * @return the value for the key or {@code null} if there is no value
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[slot(key)];
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return the previous value for the key or {@code null} if there was no value
+     * @throws UnsupportedOperationException if the map is frozen
+     */
+    public V put(long key, V value) {
+        if (frozen) {
+            throw new UnsupportedOperationException("The map is frozen");
+        }
+        return doPut(key, value);
+    }
+
+    /**
+     * Performs the action for every value and its key in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super V> action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept((V) values[i], keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a read-only copy with the capacity trimmed to the size, or this map if it's already frozen
+     */
+    public LongObjectMap<V> freeze() {
+        if (frozen) {
+            return this;
+        }
+        LongObjectMap<V> copy = new LongObjectMap<>(size, true);
+        forEach((value, key) -> copy.doPut(key, value));
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((value, key) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+    private void putUnique(long key, V value) {
+        V previous = doPut(key, value);
+        if (previous != null) {
+            doPut(key, previous);
+            throw new IllegalArgumentException("Multiple entries with same key: " + key + "=" + value
+                    + " and " + key + "=" + previous);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V doPut(long key, V value) {
+        Objects.requireNonNull(value, "value");
+        int slot = slot(key);
+        V previous = (V) values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if (previous == null && ++size > threshold) {
+            rehash();
+        }
+        return previous;
+    }
+
+    private int slot(long key) {
+        int mask = values.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        if (oldValues.length == MAX_CAPACITY) {
+            throw new IllegalStateException("The map is full");
+        }
+        allocate(oldValues.length << 1);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = capacity == MAX_CAPACITY ? MAX_CAPACITY - 1 : (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long capacity = Math.max(2, (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1);
+        return (int) Math.min(Long.highestOneBit(capacity - 1) << 1, MAX_CAPACITY);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
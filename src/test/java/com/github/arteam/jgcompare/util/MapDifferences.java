@@ -0,0 +1,153 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compares two maps in one pass, like {@code Maps.difference}, but streams the differences
+ * instead of building the four maps of a {@code MapDifference}.
+ * <p>
+ * Every key of both maps yields exactly one {@link Difference}, and the caller filters or collects
+ * the kinds it's interested in. Two maps sorted by the same comparator are merged, and the stream
+ * is ordered by the key. When one of them is an {@link ImmutableSortedMap}, the merge splits for
+ * a parallel stream by the median key of that map, so both maps are split into the same key ranges
+ * without being copied. Other maps are scanned once each, looking up the keys in the other map.
+ */
+public class MapDifferences {
+
+    private MapDifferences() {
+    }
+
+    public enum Kind {
+        ONLY_LEFT, ONLY_RIGHT, DIFFERING, COMMON
+    }
+
+    /**
+     * A key with its values in both maps, a value is {@code null} if the key is absent in the map
+     */
+    public record Difference<K, V>(Kind kind, K key, V left, V right) {
+    }
+
+    public static <K, V> Stream<Difference<K, V>> stream(Map<K, ? extends V> left, Map<K, ? extends V> right) {
+        return stream(left, right, Equivalence.equals());
+    }
+
+    /**
+     * @param valueEquivalence decides whether the values of a key present in both maps are the same
+     */
+    public static <K, V> Stream<Difference<K, V>> stream(Map<K, ? extends V> left, Map<K, ? extends V> right,
+                                                         Equivalence<? super V> valueEquivalence) {
+        if (left instanceof SortedMap<K, ? extends V> sortedLeft && right instanceof SortedMap<K, ? extends V> sortedRight
+                && SortedSets.mergeable(sortedLeft.keySet(), sortedRight.keySet())) {
+            return StreamSupport.stream(new MergeSpliterator<>(sortedLeft, sortedRight, valueEquivalence,
+                    (long) left.size() + right.size()), false);
+        }
+        Stream<Difference<K, V>> leftKeys = left.entrySet().stream()
+                .map(e -> {
+                    K key = e.getKey();
+                    V leftValue = e.getValue();
+                    V rightValue = right.get(key);
+                    if (rightValue == null && !right.containsKey(key)) {
+                        return new Difference<>(Kind.ONLY_LEFT, key, leftValue, null);
+                    }
+                    return compare(key, leftValue, rightValue, valueEquivalence);
+                });
+        Stream<Difference<K, V>> rightOnlyKeys = right.entrySet().stream()
+                .filter(e -> !left.containsKey(e.getKey()))
+                .map(e -> new Difference<>(Kind.ONLY_RIGHT, e.getKey(), null, e.getValue()));
+        return Stream.concat(leftKeys, rightOnlyKeys);
+    }
+
+    private static <K, V> Difference<K, V> compare(K key, V left, V right, Equivalence<? super V> valueEquivalence) {
+        return new Difference<>(valueEquivalence.equivalent(left, right) ? Kind.COMMON : Kind.DIFFERING, key, left, right);
+    }
+
+    /**
+     * Merges the entries of two sorted maps. The iterators are created on the first advance,
+     * until then the key range may be split.
+     */
+    private static class MergeSpliterator<K, V> implements Spliterator<Difference<K, V>> {
+
+        private SortedMap<K, ? extends V> left;
+        private SortedMap<K, ? extends V> right;
+        private final Equivalence<? super V> valueEquivalence;
+        private final Comparator<? super K> comparator;
+        private long sizeEstimate;
+        private PeekingIterator<? extends Map.Entry<K, ? extends V>> leftEntries;
+        private PeekingIterator<? extends Map.Entry<K, ? extends V>> rightEntries;
+
+        MergeSpliterator(SortedMap<K, ? extends V> left, SortedMap<K, ? extends V> right,
+                         Equivalence<? super V> valueEquivalence, long sizeEstimate) {
+            this.left = left;
+            this.right = right;
+            this.valueEquivalence = valueEquivalence;
+            this.comparator = SortedSets.comparator(left.keySet());
+            this.sizeEstimate = sizeEstimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Difference<K, V>> action) {
+            if (leftEntries == null) {
+                leftEntries = Iterators.peekingIterator(left.entrySet().iterator());
+                rightEntries = Iterators.peekingIterator(right.entrySet().iterator());
+            }
+            boolean hasLeft = leftEntries.hasNext();
+            boolean hasRight = rightEntries.hasNext();
+            if (!hasLeft && !hasRight) {
+                return false;
+            }
+            int order = !hasLeft ? 1 : !hasRight ? -1 : comparator.compare(leftEntries.peek().getKey(), rightEntries.peek().getKey());
+            if (order < 0) {
+                Map.Entry<K, ? extends V> entry = leftEntries.next();
+                action.accept(new Difference<>(Kind.ONLY_LEFT, entry.getKey(), entry.getValue(), null));
+            } else if (order > 0) {
+                Map.Entry<K, ? extends V> entry = rightEntries.next();
+                action.accept(new Difference<>(Kind.ONLY_RIGHT, entry.getKey(), null, entry.getValue()));
+            } else {
+                Map.Entry<K, ? extends V> leftEntry = leftEntries.next();
+                action.accept(compare(leftEntry.getKey(), leftEntry.getValue(), rightEntries.next().getValue(), valueEquivalence));
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Difference<K, V>> trySplit() {
+            if (leftEntries != null) {
+                return null;
+            }
+            // Only an immutable sorted map finds its median key without a traversal
+            SortedMap<K, ? extends V> pivotSource = left instanceof ImmutableSortedMap<K, ? extends V> ? left
+                    : right instanceof ImmutableSortedMap<K, ? extends V> ? right : null;
+            if (pivotSource == null || pivotSource.size() < 2) {
+                return null;
+            }
+            K pivot = ((ImmutableSortedMap<K, ? extends V>) pivotSource).keySet().asList().get(pivotSource.size() / 2);
+            sizeEstimate >>>= 1;
+            MergeSpliterator<K, V> prefix = new MergeSpliterator<>(left.headMap(pivot), right.headMap(pivot),
+                    valueEquivalence, sizeEstimate);
+            left = left.tailMap(pivot);
+            right = right.tailMap(pivot);
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return sizeEstimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
+    }
+}
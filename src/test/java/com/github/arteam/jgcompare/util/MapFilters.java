@@ -0,0 +1,99 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Filters a map into an {@link ImmutableMap} without creating an entry per key.
+ * <p>
+ * The map is walked with {@link Map#forEach(BiConsumer)}, which hands keys and values straight from
+ * the internal arrays or nodes of the map, and the predicate sees only the key, only the value or both
+ * of them. The first walk marks the matching positions in a bitset, the second one copies them into
+ * a builder presized to the exact number of matches. If everything matches, the map is just copied,
+ * which is free for an {@code ImmutableMap}. The map should not change in the meantime.
+ */
+public class MapFilters {
+
+    private MapFilters() {
+    }
+
+    public static <K, V> ImmutableMap<K, V> filterKeys(Map<K, V> map, Predicate<? super K> predicate) {
+        return filter(map, (k, v) -> predicate.test(k));
+    }
+
+    /**
+     * Filters by a predicate on unboxed keys, the keys must not be {@code null}
+     */
+    public static <V> ImmutableMap<Integer, V> filterIntKeys(Map<Integer, V> map, IntPredicate predicate) {
+        return filter(map, (k, v) -> predicate.test(k));
+    }
+
+    public static <K, V> ImmutableMap<K, V> filterValues(Map<K, V> map, Predicate<? super V> predicate) {
+        return filter(map, (k, v) -> predicate.test(v));
+    }
+
+    public static <K, V> ImmutableMap<K, V> filterEntries(Map<K, V> map, BiPredicate<? super K, ? super V> predicate) {
+        return filter(map, predicate);
+    }
+
+    private static <K, V> ImmutableMap<K, V> filter(Map<K, V> map, BiPredicate<? super K, ? super V> predicate) {
+        Marker<K, V> marker = new Marker<>(map.size(), predicate);
+        map.forEach(marker);
+        if (marker.matches == 0) {
+            return ImmutableMap.of();
+        }
+        if (marker.matches == map.size()) {
+            return ImmutableMap.copyOf(map);
+        }
+        Copier<K, V> copier = new Copier<>(marker.marks, ImmutableMap.builderWithExpectedSize(marker.matches));
+        map.forEach(copier);
+        return copier.builder.build();
+    }
+
+    private static class Marker<K, V> implements BiConsumer<K, V> {
+
+        final long[] marks;
+        final BiPredicate<? super K, ? super V> predicate;
+        int position;
+        int matches;
+
+        Marker(int size, BiPredicate<? super K, ? super V> predicate) {
+            this.marks = new long[(size + 63) >>> 6];
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void accept(K key, V value) {
+            if (predicate.test(key, value)) {
+                marks[position >>> 6] |= 1L << position;
+                matches++;
+            }
+            position++;
+        }
+    }
+
+    private static class Copier<K, V> implements BiConsumer<K, V> {
+
+        final long[] marks;
+        final ImmutableMap.Builder<K, V> builder;
+        int position;
+
+        Copier(long[] marks, ImmutableMap.Builder<K, V> builder) {
+            this.marks = marks;
+            this.builder = builder;
+        }
+
+        @Override
+        public void accept(K key, V value) {
+            if ((marks[position >>> 6] & 1L << position) != 0) {
+                builder.put(key, value);
+            }
+            position++;
+        }
+    }
+}
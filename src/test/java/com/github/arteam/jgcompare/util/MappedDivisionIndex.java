@@ -0,0 +1,199 @@
+package com.github.arteam.jgcompare.util;
+
+import com.github.arteam.jgcompare.domain.TeamDivision;
+import com.google.common.collect.ListMultimap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An index of teams by division, like {@code Multimaps.index(teams, TeamDivision::division)},
+ * stored in a file and read through a memory mapping.
+ * <p>
+ * All the strings are kept in one UTF-8 pool: the divisions first, sorted by their bytes, then the names
+ * of the teams grouped by division. A lookup compares the bytes of the division with the pool in a binary
+ * search and returns a view of the group, which decodes a team only when it's accessed. The file consists
+ * of a header (a magic number and the counts), the starts of the groups, the offsets of the strings and
+ * the pool. A mapping is limited to 2 GB.
+ */
+public class MappedDivisionIndex {
+
+    private static final int MAGIC = 0x44495653; // "DIVS"
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int divisionCount;
+    private final int groupsStart;
+    private final int offsetsStart;
+    private final int poolStart;
+
+    private MappedDivisionIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.divisionCount = buffer.getInt(4);
+        int teamCount = buffer.getInt(8);
+        this.groupsStart = HEADER_SIZE;
+        this.offsetsStart = groupsStart + (divisionCount + 1) * Integer.BYTES;
+        this.poolStart = offsetsStart + (divisionCount + teamCount + 1) * Integer.BYTES;
+    }
+
+    public static void write(Path path, ListMultimap<String, TeamDivision> index) throws IOException {
+        byte[][] divisions = index.keySet().stream()
+                .map(division -> division.getBytes(StandardCharsets.UTF_8))
+                .sorted(Arrays::compareUnsigned)
+                .toArray(byte[][]::new);
+        int teamCount = index.size();
+        byte[][] strings = Arrays.copyOf(divisions, divisions.length + teamCount);
+        int[] groupStarts = new int[divisions.length + 1];
+        int position = divisions.length;
+        for (int i = 0; i < divisions.length; i++) {
+            groupStarts[i] = position - divisions.length;
+            for (TeamDivision team : index.get(new String(divisions[i], StandardCharsets.UTF_8))) {
+                strings[position++] = team.name().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        groupStarts[divisions.length] = teamCount;
+
+        long fileSize = HEADER_SIZE + (divisions.length + 1L) * Integer.BYTES + (strings.length + 1L) * Integer.BYTES;
+        for (byte[] string : strings) {
+            fileSize += string.length;
+        }
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index is too large to be mapped: " + fileSize + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.putInt(MAGIC).putInt(divisions.length).putInt(teamCount);
+            for (int groupStart : groupStarts) {
+                buffer.putInt(groupStart);
+            }
+            int offset = 0;
+            for (byte[] string : strings) {
+                buffer.putInt(offset);
+                offset += string.length;
+            }
+            buffer.putInt(offset);
+            for (byte[] string : strings) {
+                buffer.put(string);
+            }
+            buffer.force();
+        }
+    }
+
+    public static MappedDivisionIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a division index: " + path);
+            }
+            return new MappedDivisionIndex(buffer);
+        }
+    }
+
+    /**
+     * @return the teams of the division in the original order, an empty list if there's no such division
+     */
+    public List<TeamDivision> get(String division) {
+        int position = position(division.getBytes(StandardCharsets.UTF_8));
+        if (position < 0) {
+            return List.of();
+        }
+        int from = buffer.getInt(groupsStart + position * Integer.BYTES);
+        int to = buffer.getInt(groupsStart + (position + 1) * Integer.BYTES);
+        return new Group(division, from, to);
+    }
+
+    public boolean containsKey(String division) {
+        return position(division.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * @return the divisions sorted by their UTF-8 bytes
+     */
+    public List<String> divisions() {
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return string(index);
+            }
+
+            @Override
+            public int size() {
+                return divisionCount;
+            }
+        };
+    }
+
+    private String string(int index) {
+        int start = buffer.getInt(offsetsStart + index * Integer.BYTES);
+        int end = buffer.getInt(offsetsStart + (index + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        buffer.get(poolStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int position(byte[] division) {
+        int low = 0;
+        int high = divisionCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compare(middle, division);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the string in the pool with the bytes like {@link Arrays#compareUnsigned(byte[], byte[])}
+     */
+    private int compare(int index, byte[] bytes) {
+        int start = poolStart + buffer.getInt(offsetsStart + index * Integer.BYTES);
+        int length = poolStart + buffer.getInt(offsetsStart + (index + 1) * Integer.BYTES) - start;
+        for (int i = 0, common = Math.min(length, bytes.length); i < common; i++) {
+            int order = Byte.compareUnsigned(buffer.get(start + i), bytes[i]);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(length, bytes.length);
+    }
+
+    private class Group extends AbstractList<TeamDivision> implements RandomAccess {
+
+        private final String division;
+        private final int from;
+        private final int to;
+
+        Group(String division, int from, int to) {
+            this.division = division;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public TeamDivision get(int index) {
+            return new TeamDivision(string(divisionCount + from + Objects.checkIndex(index, size())), division);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.arteam.jgcompare.util;
+
+import com.github.arteam.jgcompare.domain.Team;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * A unique index of teams by id, like {@code Maps.uniqueIndex(teams, Team::id)}, stored in a file
+ * and read through a memory mapping.
+ * <p>
+ * Opening the file maps it and checks the header, nothing is read into the heap. A lookup does a binary
+ * search over the sorted ids in the mapping and decodes the name of the found team only. The file
+ * consists of a header (a magic number and the count), the sorted ids, the offsets of the names
+ * and the names themselves in UTF-8. A mapping is limited to 2 GB.
+ */
+public class MappedTeamIndex {
+
+    private static final int MAGIC = 0x5445414D; // "TEAM"
+    private static final int HEADER_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int offsetsStart;
+    private final int namesStart;
+
+    private MappedTeamIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(4);
+        this.offsetsStart = HEADER_SIZE + size * Long.BYTES;
+        this.namesStart = offsetsStart + (size + 1) * Integer.BYTES;
+    }
+
+    public static void write(Path path, Map<Long, Team> index) throws IOException {
+        long[] ids = index.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        byte[][] names = new byte[ids.length][];
+        long fileSize = HEADER_SIZE + (long) ids.length * Long.BYTES + (ids.length + 1L) * Integer.BYTES;
+        for (int i = 0; i < ids.length; i++) {
+            names[i] = index.get(ids[i]).name().getBytes(StandardCharsets.UTF_8);
+            fileSize += names[i].length;
+        }
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index is too large to be mapped: " + fileSize + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            buffer.putInt(MAGIC).putInt(ids.length);
+            for (long id : ids) {
+                buffer.putLong(id);
+            }
+            int offset = 0;
+            for (byte[] name : names) {
+                buffer.putInt(offset);
+                offset += name.length;
+            }
+            buffer.putInt(offset);
+            for (byte[] name : names) {
+                buffer.put(name);
+            }
+            buffer.force();
+        }
+    }
+
+    public static MappedTeamIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a team index: " + path);
+            }
+            return new MappedTeamIndex(buffer);
+        }
+    }
+
+    /**
+     * @return the team with the id or {@code null} if there's no such team
+     */
+    public Team get(long id) {
+        int position = position(id);
+        if (position < 0) {
+            return null;
+        }
+        int start = buffer.getInt(offsetsStart + position * Integer.BYTES);
+        int end = buffer.getInt(offsetsStart + (position + 1) * Integer.BYTES);
+        byte[] name = new byte[end - start];
+        buffer.get(namesStart + start, name);
+        return new Team(id, new String(name, StandardCharsets.UTF_8));
+    }
+
+    public boolean containsKey(long id) {
+        return position(id) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int position(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = buffer.getLong(HEADER_SIZE + middle * Long.BYTES);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
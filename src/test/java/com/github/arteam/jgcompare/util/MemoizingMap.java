@@ -0,0 +1,149 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * A lazy view of a map with transformed values, like {@code Maps.transformValues}, which computes
+ * every value only once.
+ * <p>
+ * The entries of the source map are numbered in its iteration order, and the transformed values are
+ * cached in an array by the number of the entry. A value is computed on the first access and published
+ * with release semantics, so the view may be read from many threads. If two threads race on the same
+ * entry, the function is applied twice, but both threads see the value which was published first.
+ * The view captures the entries of the source map on creation and doesn't see later changes of it.
+ * {@link #materialize()} computes the values which haven't been accessed yet in parallel.
+ */
+public class MemoizingMap<K, V1, V2> extends AbstractMap<K, V2> {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final Object NULL_VALUE = new Object();
+
+    private final Object[] keys;
+    private final Object[] sourceValues;
+    private final Object[] values;
+    private final int[] index;
+    private final Function<? super V1, ? extends V2> function;
+
+    private MemoizingMap(Map<? extends K, ? extends V1> source, Function<? super V1, ? extends V2> function) {
+        int size = source.size();
+        this.keys = new Object[size];
+        this.sourceValues = new Object[size];
+        this.values = new Object[size];
+        this.index = new int[Integer.highestOneBit(Math.max(size, 1)) << 2];
+        this.function = function;
+        int slot = 0;
+        for (Entry<? extends K, ? extends V1> entry : source.entrySet()) {
+            keys[slot] = entry.getKey();
+            sourceValues[slot] = entry.getValue();
+            int position = position(entry.getKey());
+            while (index[position] != 0) {
+                position = (position + 1) & (index.length - 1);
+            }
+            // Zero is an empty position, so the slots are stored shifted by one
+            index[position] = ++slot;
+        }
+    }
+
+    public static <K, V1, V2> MemoizingMap<K, V1, V2> transformValues(Map<? extends K, ? extends V1> source,
+                                                                      Function<? super V1, ? extends V2> function) {
+        return new MemoizingMap<>(source, function);
+    }
+
+    @Override
+    public V2 get(Object key) {
+        int slot = slot(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slot(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Computes all the values, in parallel, and copies the view to an immutable map
+     * in the iteration order of the source map.
+     */
+    public ImmutableMap<K, V2> materialize() {
+        IntStream.range(0, keys.length).parallel().forEach(this::value);
+        return ImmutableMap.copyOf(this);
+    }
+
+    @Override
+    public Set<Entry<K, V2>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V2>> iterator() {
+                return new Iterator<>() {
+
+                    private int slot;
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < keys.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V2> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int current = slot++;
+                        return new SimpleImmutableEntry<>((K) keys[current], value(current));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private V2 value(int slot) {
+        Object value = SLOTS.getAcquire(values, slot);
+        if (value == null) {
+            V2 computed = function.apply((V1) sourceValues[slot]);
+            Object witness = SLOTS.compareAndExchangeRelease(values, slot, null, computed == null ? NULL_VALUE : computed);
+            value = witness == null ? (computed == null ? NULL_VALUE : computed) : witness;
+        }
+        return value == NULL_VALUE ? null : (V2) value;
+    }
+
+    private int slot(Object key) {
+        int position = position(key);
+        int slot;
+        while ((slot = index[position]) != 0) {
+            if (Objects.equals(keys[slot - 1], key)) {
+                return slot - 1;
+            }
+            position = (position + 1) & (index.length - 1);
+        }
+        return -1;
+    }
+
+    private int position(Object key) {
+        int h = Objects.hashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (index.length - 1);
+    }
+}
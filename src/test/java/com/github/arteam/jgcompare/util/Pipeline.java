@@ -0,0 +1,255 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * A chain of filter, map and limit stages over an {@link Iterable}, which runs as one loop.
+ * <p>
+ * Unlike nested {@code Iterables.filter} calls or a chain of {@code Stream.filter} calls, the stages
+ * don't wrap each other element by element. As the pipeline is built, adjacent filters are composed
+ * into one predicate, adjacent maps into one function and adjacent limits into one limit. The common
+ * shapes (a filter, a map, a filter followed by a map) get a dedicated loop. Other shapes are linked
+ * into a chain of stage sinks once per terminal operation, so an element is passed from stage to stage
+ * without looking up what kind of stage comes next. Random-access lists are read by index, without
+ * an iterator.
+ * <p>
+ * A pipeline is immutable, every stage returns a new pipeline.
+ */
+public class Pipeline<T> {
+
+    private final Iterable<?> source;
+    private final ImmutableList<Stage> stages;
+
+    private Pipeline(Iterable<?> source, ImmutableList<Stage> stages) {
+        this.source = source;
+        this.stages = stages;
+    }
+
+    public static <T> Pipeline<T> from(Iterable<? extends T> source) {
+        return new Pipeline<>(source, ImmutableList.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    public Pipeline<T> filter(Predicate<? super T> predicate) {
+        return append(new Stage(Kind.FILTER, (Predicate<Object>) predicate, null, 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> Pipeline<R> map(Function<? super T, ? extends R> function) {
+        return append(new Stage(Kind.MAP, null, (Function<Object, Object>) function, 0));
+    }
+
+    public Pipeline<T> limit(long maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "Limit should be non-negative, got %s", maxSize);
+        return append(new Stage(Kind.LIMIT, null, null, maxSize));
+    }
+
+    public List<T> toList() {
+        return into(new ArrayList<>(sized() ? ((Collection<?>) source).size() : 10));
+    }
+
+    /**
+     * Writes straight into an array of the size of the source when only maps follow it
+     */
+    public T[] toArray(IntFunction<T[]> generator) {
+        if (!sized()) {
+            List<T> list = toList();
+            return list.toArray(generator.apply(list.size()));
+        }
+        T[] array = generator.apply(((Collection<?>) source).size());
+        Object[] target = array;
+        Function<Object, Object> function = stages.isEmpty() ? Function.identity() : stages.get(0).function;
+        int[] position = {0};
+        forEachWhile(element -> {
+            target[position[0]++] = function.apply(element);
+            return position[0] < target.length;
+        });
+        return array;
+    }
+
+    /**
+     * Adds every element which passes the pipeline to the target collection.
+     */
+    @SuppressWarnings("unchecked")
+    public <C extends Collection<? super T>> C into(C target) {
+        Collection<Object> sink = (Collection<Object>) target;
+        if (stages.size() == 1 && stages.get(0).kind == Kind.FILTER) {
+            filterInto(stages.get(0).predicate, sink);
+        } else if (stages.size() == 1 && stages.get(0).kind == Kind.MAP) {
+            mapInto(stages.get(0).function, sink);
+        } else if (stages.size() == 2 && stages.get(0).kind == Kind.FILTER && stages.get(1).kind == Kind.MAP) {
+            filterMapInto(stages.get(0).predicate, stages.get(1).function, sink);
+        } else if (stages.stream().noneMatch(stage -> stage.kind == Kind.LIMIT && stage.maxSize == 0)) {
+            forEachWhile(link(sink));
+        }
+        return target;
+    }
+
+    /**
+     * Only maps keep the size of the source, and they are composed into one stage
+     */
+    private boolean sized() {
+        return source instanceof Collection<?> && (stages.isEmpty() || stages.size() == 1 && stages.get(0).kind == Kind.MAP);
+    }
+
+    private void filterInto(Predicate<Object> predicate, Collection<Object> sink) {
+        if (source instanceof List<?> list && source instanceof RandomAccess) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Object element = list.get(i);
+                if (predicate.test(element)) {
+                    sink.add(element);
+                }
+            }
+        } else {
+            for (Object element : source) {
+                if (predicate.test(element)) {
+                    sink.add(element);
+                }
+            }
+        }
+    }
+
+    private void mapInto(Function<Object, Object> function, Collection<Object> sink) {
+        if (source instanceof List<?> list && source instanceof RandomAccess) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                sink.add(function.apply(list.get(i)));
+            }
+        } else {
+            for (Object element : source) {
+                sink.add(function.apply(element));
+            }
+        }
+    }
+
+    private void filterMapInto(Predicate<Object> predicate, Function<Object, Object> function, Collection<Object> sink) {
+        if (source instanceof List<?> list && source instanceof RandomAccess) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                Object element = list.get(i);
+                if (predicate.test(element)) {
+                    sink.add(function.apply(element));
+                }
+            }
+        } else {
+            for (Object element : source) {
+                if (predicate.test(element)) {
+                    sink.add(function.apply(element));
+                }
+            }
+        }
+    }
+
+    /**
+     * Composes the stage with the last one if they are of the same kind
+     */
+    private <R> Pipeline<R> append(Stage stage) {
+        Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+        if (last == null || last.kind != stage.kind) {
+            return new Pipeline<>(source, ImmutableList.<Stage>builderWithExpectedSize(stages.size() + 1)
+                    .addAll(stages)
+                    .add(stage)
+                    .build());
+        }
+        Stage composed = switch (stage.kind) {
+            case FILTER -> new Stage(Kind.FILTER, last.predicate.and(stage.predicate), null, 0);
+            case MAP -> new Stage(Kind.MAP, null, last.function.andThen(stage.function), 0);
+            case LIMIT -> new Stage(Kind.LIMIT, null, null, Math.min(last.maxSize, stage.maxSize));
+        };
+        return new Pipeline<>(source, ImmutableList.<Stage>builderWithExpectedSize(stages.size())
+                .addAll(stages.subList(0, stages.size() - 1))
+                .add(composed)
+                .build());
+    }
+
+    /**
+     * Links the stages into sinks from the last one to the first one. Limits get fresh counters.
+     */
+    private ElementAction link(Collection<Object> target) {
+        ElementAction sink = element -> {
+            target.add(element);
+            return true;
+        };
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Stage stage = stages.get(i);
+            ElementAction next = sink;
+            sink = switch (stage.kind) {
+                case FILTER -> {
+                    Predicate<Object> predicate = stage.predicate;
+                    yield element -> !predicate.test(element) || next.apply(element);
+                }
+                case MAP -> {
+                    Function<Object, Object> function = stage.function;
+                    yield element -> next.apply(function.apply(element));
+                }
+                case LIMIT -> new LimitSink(stage.maxSize, next);
+            };
+        }
+        return sink;
+    }
+
+    /**
+     * Feeds the source to the action until the action returns {@code false}
+     */
+    private void forEachWhile(ElementAction action) {
+        if (source instanceof List<?> list && source instanceof RandomAccess) {
+            for (int i = 0, size = list.size(); i < size; i++) {
+                if (!action.apply(list.get(i))) {
+                    return;
+                }
+            }
+        } else {
+            for (Object element : source) {
+                if (!action.apply(element)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private enum Kind {
+        FILTER, MAP, LIMIT
+    }
+
+    private record Stage(Kind kind, Predicate<Object> predicate, Function<Object, Object> function, long maxSize) {
+    }
+
+    /**
+     * Receives an element and tells whether the source should go on
+     */
+    @FunctionalInterface
+    private interface ElementAction {
+        boolean apply(Object element);
+    }
+
+    /**
+     * Counts an element against the limit before the next stages see it, so the source stops as soon as
+     * the limit is used up, whatever the next stages do with the element
+     */
+    private static class LimitSink implements ElementAction {
+
+        private final ElementAction next;
+        private long remaining;
+
+        LimitSink(long maxSize, ElementAction next) {
+            this.remaining = maxSize;
+            this.next = next;
+        }
+
+        @Override
+        public boolean apply(Object element) {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            return next.apply(element) && remaining > 0;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Lazy set algebra over two sets, the stream-side counterpart of {@code Sets.union} and friends.
+ * <p>
+ * The views copy nothing, they reflect the changes of the backing sets. Their spliterators report
+ * {@link Spliterator#DISTINCT} and an upper bound of the size, and they split along with the backing
+ * sets, so the streams of the views can run in parallel. {@code size()} of every view takes a pass
+ * over the smaller set only. The views iterate in the same order as their {@code Sets} counterparts
+ * and emit the elements of {@code first} where both sets have an equal one.
+ */
+public class SetViews {
+
+    private SetViews() {
+    }
+
+    /**
+     * @return the elements of {@code first} which are not in {@code second}
+     */
+    public static <E> SetView<E> difference(Set<E> first, Set<?> second) {
+        return new SetView<>() {
+            @Override
+            public int size() {
+                return first.size() - intersectionSize(first, second);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return first.contains(o) && !second.contains(o);
+            }
+
+            @Override
+            public Spliterator<E> spliterator() {
+                return distinct(first.stream().filter(e -> !second.contains(e)), first.size());
+            }
+        };
+    }
+
+    /**
+     * @return the elements which are both in {@code first} and {@code second}
+     */
+    public static <E> SetView<E> intersection(Set<E> first, Set<?> second) {
+        return new SetView<>() {
+            @Override
+            public int size() {
+                return intersectionSize(first, second);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return first.contains(o) && second.contains(o);
+            }
+
+            @Override
+            public Spliterator<E> spliterator() {
+                return distinct(first.stream().filter(second::contains), Math.min(first.size(), second.size()));
+            }
+        };
+    }
+
+    /**
+     * @return the elements which are in any of the sets
+     */
+    public static <E> SetView<E> union(Set<? extends E> first, Set<? extends E> second) {
+        return new SetView<>() {
+            @Override
+            public int size() {
+                return first.size() + second.size() - intersectionSize(first, second);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return first.contains(o) || second.contains(o);
+            }
+
+            @Override
+            public Spliterator<E> spliterator() {
+                return distinct(Stream.concat(first.stream(), second.stream().filter(e -> !first.contains(e))),
+                        (long) first.size() + second.size());
+            }
+        };
+    }
+
+    /**
+     * @return the elements which are in exactly one of the sets
+     */
+    public static <E> SetView<E> symmetricDifference(Set<? extends E> first, Set<? extends E> second) {
+        return new SetView<>() {
+            @Override
+            public int size() {
+                return first.size() + second.size() - 2 * intersectionSize(first, second);
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return first.contains(o) ^ second.contains(o);
+            }
+
+            @Override
+            public Spliterator<E> spliterator() {
+                return distinct(Stream.concat(first.stream().filter(e -> !second.contains(e)),
+                        second.stream().filter(e -> !first.contains(e))), (long) first.size() + second.size());
+            }
+        };
+    }
+
+    private static int intersectionSize(Set<?> first, Set<?> second) {
+        Set<?> smaller = first.size() <= second.size() ? first : second;
+        Set<?> larger = smaller == first ? second : first;
+        int size = 0;
+        for (Object e : smaller) {
+            if (larger.contains(e)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private static <E> Spliterator<E> distinct(Stream<? extends E> stream, long sizeEstimate) {
+        return new DistinctSpliterator<>(stream.spliterator(), sizeEstimate);
+    }
+
+    /**
+     * An unmodifiable lazy view of a set operation. Elements are computed on every traversal,
+     * {@link #immutableCopy()} takes a snapshot.
+     */
+    public abstract static class SetView<E> extends AbstractSet<E> {
+
+        @Override
+        public abstract Spliterator<E> spliterator();
+
+        @Override
+        public Iterator<E> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !spliterator().tryAdvance(e -> {
+            });
+        }
+
+        public ImmutableSet<E> immutableCopy() {
+            return ImmutableSet.copyOf(this);
+        }
+    }
+
+    /**
+     * Reports the elements of a set operation as distinct, which a filtered
+     * or a concatenated stream can't know on its own.
+     */
+    private static class DistinctSpliterator<E> implements Spliterator<E> {
+
+        private final Spliterator<? extends E> delegate;
+        private long sizeEstimate;
+
+        DistinctSpliterator(Spliterator<? extends E> delegate, long sizeEstimate) {
+            this.delegate = delegate;
+            this.sizeEstimate = sizeEstimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            return delegate.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            delegate.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            Spliterator<? extends E> prefix = delegate.trySplit();
+            if (prefix == null) {
+                return null;
+            }
+            sizeEstimate = Math.min(sizeEstimate, delegate.estimateSize());
+            return new DistinctSpliterator<>(prefix, prefix.estimateSize());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(sizeEstimate, delegate.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return (delegate.characteristics() & ~(SIZED | SUBSIZED | SORTED)) | DISTINCT;
+        }
+    }
+}
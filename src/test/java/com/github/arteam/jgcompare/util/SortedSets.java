@@ -0,0 +1,276 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.PeekingIterator;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Set operations which merge two sorted sets in one sequential scan instead of probing a hash table.
+ * <p>
+ * The merge kicks in when both sets are {@link SortedSet}s ordered the same way, the resulting
+ * streams are then {@code SORTED}, {@code ORDERED} and {@code DISTINCT}. When one set is much smaller
+ * than the other and the larger one is an {@link ImmutableSortedSet}, the intersection and the
+ * difference walk the smaller set and gallop through the larger one with an exponential search,
+ * so they don't touch most of the larger set at all. Any other sets fall back to {@link SetViews}.
+ */
+public class SortedSets {
+
+    /**
+     * The size ratio from which the galloping search beats the linear merge
+     */
+    static final int GALLOP_RATIO = 32;
+
+    private SortedSets() {
+    }
+
+    public static <E> Stream<E> union(Set<E> first, Set<E> second) {
+        if (!mergeable(first, second)) {
+            return SetViews.union(first, second).stream();
+        }
+        return merge(first, second, Operation.UNION);
+    }
+
+    public static <E> Stream<E> intersection(Set<E> first, Set<E> second) {
+        if (!mergeable(first, second)) {
+            return SetViews.intersection(first, second).stream();
+        }
+        Set<E> smaller = first.size() <= second.size() ? first : second;
+        Set<E> larger = smaller == first ? second : first;
+        if (gallops(smaller, larger)) {
+            return gallop(smaller, (ImmutableSortedSet<E>) larger, true);
+        }
+        return merge(first, second, Operation.INTERSECTION);
+    }
+
+    public static <E> Stream<E> difference(Set<E> first, Set<E> second) {
+        if (!mergeable(first, second)) {
+            return SetViews.difference(first, second).stream();
+        }
+        if (gallops(first, second)) {
+            return gallop(first, (ImmutableSortedSet<E>) second, false);
+        }
+        return merge(first, second, Operation.DIFFERENCE);
+    }
+
+    public static <E> Stream<E> symmetricDifference(Set<E> first, Set<E> second) {
+        if (!mergeable(first, second)) {
+            return SetViews.symmetricDifference(first, second).stream();
+        }
+        return merge(first, second, Operation.SYMMETRIC_DIFFERENCE);
+    }
+
+    /**
+     * @return whether both sets are sorted by the same comparator
+     */
+    static boolean mergeable(Set<?> first, Set<?> second) {
+        return first instanceof SortedSet<?> sortedFirst && second instanceof SortedSet<?> sortedSecond
+                && Objects.equals(normalize(sortedFirst.comparator()), normalize(sortedSecond.comparator()));
+    }
+
+    private static boolean gallops(Set<?> probes, Set<?> target) {
+        return target instanceof ImmutableSortedSet<?> && (long) probes.size() * GALLOP_RATIO <= target.size();
+    }
+
+    /**
+     * Natural ordering is either no comparator at all or one of the natural comparators
+     */
+    private static Comparator<?> normalize(Comparator<?> comparator) {
+        return comparator == null || comparator.equals(Ordering.natural()) || comparator.equals(Comparator.naturalOrder())
+                ? null : comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> Comparator<? super E> comparator(Set<E> set) {
+        Comparator<? super E> comparator = (Comparator<? super E>) normalize(((SortedSet<E>) set).comparator());
+        return comparator != null ? comparator : (Comparator<? super E>) Comparator.naturalOrder();
+    }
+
+    private static <E> Stream<E> merge(Set<E> first, Set<E> second, Operation operation) {
+        return StreamSupport.stream(new MergeSpliterator<>(first, second, operation), false);
+    }
+
+    private static <E> Stream<E> gallop(Set<E> probes, ImmutableSortedSet<E> target, boolean keepFound) {
+        return StreamSupport.stream(new GallopingSpliterator<>(probes, target, keepFound), false);
+    }
+
+    private enum Operation {
+        UNION(true, true, true),
+        INTERSECTION(false, false, true),
+        DIFFERENCE(true, false, false),
+        SYMMETRIC_DIFFERENCE(true, true, false);
+
+        final boolean emitsFirstOnly;
+        final boolean emitsSecondOnly;
+        final boolean emitsBoth;
+
+        Operation(boolean emitsFirstOnly, boolean emitsSecondOnly, boolean emitsBoth) {
+            this.emitsFirstOnly = emitsFirstOnly;
+            this.emitsSecondOnly = emitsSecondOnly;
+            this.emitsBoth = emitsBoth;
+        }
+    }
+
+    private abstract static class SortedSpliterator<E> implements Spliterator<E> {
+
+        final Comparator<? super E> comparator;
+        private final Comparator<? super E> reportedComparator;
+
+        @SuppressWarnings("unchecked")
+        SortedSpliterator(Set<E> set) {
+            this.comparator = comparator(set);
+            this.reportedComparator = (Comparator<? super E>) normalize(((SortedSet<E>) set).comparator());
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            return null;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT;
+        }
+
+        @Override
+        public Comparator<? super E> getComparator() {
+            return reportedComparator;
+        }
+    }
+
+    /**
+     * Advances over two sorted iterators at once and emits the elements the operation asks for
+     */
+    private static class MergeSpliterator<E> extends SortedSpliterator<E> {
+
+        private final PeekingIterator<E> first;
+        private final PeekingIterator<E> second;
+        private final Operation operation;
+        private final long sizeEstimate;
+
+        MergeSpliterator(Set<E> first, Set<E> second, Operation operation) {
+            super(first);
+            this.first = Iterators.peekingIterator(first.iterator());
+            this.second = Iterators.peekingIterator(second.iterator());
+            this.operation = operation;
+            this.sizeEstimate = switch (operation) {
+                case UNION, SYMMETRIC_DIFFERENCE -> (long) first.size() + second.size();
+                case INTERSECTION -> Math.min(first.size(), second.size());
+                case DIFFERENCE -> first.size();
+            };
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (true) {
+                boolean hasFirst = first.hasNext();
+                boolean hasSecond = second.hasNext();
+                if (!hasFirst && (!hasSecond || !operation.emitsSecondOnly)
+                        || !hasSecond && !operation.emitsFirstOnly) {
+                    return false;
+                }
+                int order = !hasFirst ? 1 : !hasSecond ? -1 : comparator.compare(first.peek(), second.peek());
+                if (order < 0) {
+                    E element = first.next();
+                    if (operation.emitsFirstOnly) {
+                        action.accept(element);
+                        return true;
+                    }
+                } else if (order > 0) {
+                    E element = second.next();
+                    if (operation.emitsSecondOnly) {
+                        action.accept(element);
+                        return true;
+                    }
+                } else {
+                    E element = first.next();
+                    second.next();
+                    if (operation.emitsBoth) {
+                        action.accept(element);
+                        return true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return sizeEstimate;
+        }
+    }
+
+    /**
+     * Walks the probes and looks each of them up in the random-access list of the target with
+     * an exponential search from the position of the previous probe.
+     */
+    private static class GallopingSpliterator<E> extends SortedSpliterator<E> {
+
+        private final Iterator<E> probes;
+        private final List<E> target;
+        private final boolean keepFound;
+        private final long sizeEstimate;
+        private int position;
+
+        GallopingSpliterator(Set<E> probes, ImmutableSortedSet<E> target, boolean keepFound) {
+            super(probes);
+            this.probes = probes.iterator();
+            this.target = target.asList();
+            this.keepFound = keepFound;
+            this.sizeEstimate = probes.size();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (probes.hasNext()) {
+                E probe = probes.next();
+                position = lowerBound(probe);
+                boolean found = position < target.size() && comparator.compare(target.get(position), probe) == 0;
+                if (found == keepFound) {
+                    action.accept(probe);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the index of the first element in the target which is not less than the probe
+         */
+        private int lowerBound(E probe) {
+            int low = position;
+            int step = 1;
+            int high = low;
+            while (high < target.size() && comparator.compare(target.get(high), probe) < 0) {
+                low = high + 1;
+                high = low + step;
+                step <<= 1;
+            }
+            high = Math.min(high, target.size());
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(target.get(middle), probe) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public long estimateSize() {
+            return sizeEstimate;
+        }
+    }
+}
@@ -1,30 +1,527 @@
 package com.github.arteam.jgcompare.util;
 
-import java.util.Iterator;
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class StreamUtils {
 
+    /**
+     * Pairs every element of the stream with its position in the encounter order.
+     * <p>
+     * The result keeps the size of the source and splits along with it, so a parallel stream
+     * stays parallel and every split gets the right index offset. Indices are {@code int}s, so
+     * the traversal fails with an {@link ArithmeticException} past {@link Integer#MAX_VALUE}.
+     */
     public static <T> Stream<ElementIndex<T>> withIndex(Stream<? extends T> stream) {
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Iterator<ElementIndex<T>>() {
-            private final Iterator<? extends T> streamIterator = stream.iterator();
-            private int index = 0;
+        return StreamSupport.stream(new IndexedSpliterator<T>(stream.spliterator(), 0), stream.isParallel())
+                .onClose(stream::close);
+    }
 
-            @Override
-            public boolean hasNext() {
-                return streamIterator.hasNext();
+    /**
+     * Performs the action for every element of the stream and its index
+     * without allocating a pair for each of them.
+     * <p>
+     * A parallel stream is traversed in parallel. The action is then called concurrently
+     * from several threads and not in the encounter order. Like {@link #withIndex}, it fails past
+     * {@link Integer#MAX_VALUE} elements.
+     */
+    public static <T> void forEachIndexed(Stream<? extends T> stream, ObjIntConsumer<? super T> action) {
+        try (stream) {
+            IndexedSpliterator<T> spliterator = new IndexedSpliterator<>(stream.spliterator(), 0);
+            if (stream.isParallel()) {
+                new ForEachIndexedTask<>(null, spliterator, action, sizeThreshold(spliterator)).invoke();
+            } else {
+                spliterator.forEachIndexed(action);
             }
+        }
+    }
+
+    /**
+     * Groups consecutive elements of the stream into lists of the given size, the last list may be smaller.
+     * <p>
+     * The lists are built lazily, one at a time, while the stream is consumed. A parallel stream over
+     * a sub-sized source is split on chunk boundaries, so every chunk is the same as in a sequential run.
+     * Other sources are consumed sequentially.
+     */
+    public static <T> Stream<List<T>> chunked(Stream<? extends T> stream, int size) {
+        Preconditions.checkArgument(size > 0, "Chunk size should be positive, got %s", size);
+        return StreamSupport.stream(new ChunkedSpliterator<T>(stream.spliterator(), size, false, null), stream.isParallel())
+                .onClose(stream::close);
+    }
+
+    /**
+     * Like {@link #chunked(Stream, int)}, but pads the last chunk with the filler up to the size.
+     */
+    public static <T> Stream<List<T>> paddedChunked(Stream<? extends T> stream, int size, T filler) {
+        Preconditions.checkArgument(size > 0, "Chunk size should be positive, got %s", size);
+        return StreamSupport.stream(new ChunkedSpliterator<T>(stream.spliterator(), size, true, filler), stream.isParallel())
+                .onClose(stream::close);
+    }
 
-            @Override
-            public ElementIndex<T> next() {
-                return new ElementIndex<>(index++, streamIterator.next());
+    /**
+     * Checks that the stream has exactly one element, like {@code Iterables.getOnlyElement}, and stops
+     * as soon as it has seen a second one. A parallel stream is split into tasks which all stop once
+     * any of them has found the second element. In parallel, the two elements of {@link Multiple}
+     * are any two elements of the stream, not necessarily the first ones.
+     */
+    public static <T> Only<T> findOnly(Stream<? extends T> stream) {
+        try (stream) {
+            Spliterator<? extends T> spliterator = stream.spliterator();
+            FindOnlyState state = new FindOnlyState();
+            if (stream.isParallel()) {
+                new FindOnlyTask<>(null, spliterator, state, sizeThreshold(spliterator)).invoke();
+            } else {
+                while (!state.multiple && spliterator.tryAdvance(state)) {
+                }
             }
-        }, Spliterator.ORDERED | Spliterator.IMMUTABLE), false);
+            return state.result();
+        }
+    }
+
+    /**
+     * The result of {@link #findOnly}: no elements, exactly one element or more than one
+     */
+    public sealed interface Only<T> {
+
+        /**
+         * @return the only element or the default value if there are no elements, like
+         * {@code Iterables.getOnlyElement(iterable, defaultValue)}
+         * @throws IllegalArgumentException if there are multiple elements
+         */
+        default T orElse(T defaultValue) {
+            return switch (this) {
+                case None<T> none -> defaultValue;
+                case One<T> one -> one.element();
+                case Multiple<T> multiple -> throw multiple.exception();
+            };
+        }
+
+        /**
+         * @return the only element, like {@code Iterables.getOnlyElement(iterable)}
+         * @throws NoSuchElementException   if there are no elements
+         * @throws IllegalArgumentException if there are multiple elements
+         */
+        default T orElseThrow() {
+            return switch (this) {
+                case None<T> none -> throw new NoSuchElementException();
+                case One<T> one -> one.element();
+                case Multiple<T> multiple -> throw multiple.exception();
+            };
+        }
+    }
+
+    public record None<T>() implements Only<T> {
+    }
+
+    public record One<T>(T element) implements Only<T> {
+    }
+
+    public record Multiple<T>(T first, T second) implements Only<T> {
+
+        IllegalArgumentException exception() {
+            return new IllegalArgumentException("expected one element but was: <" + first + ", " + second + ", ...>");
+        }
+    }
+
+    /**
+     * Repeats the elements of the list infinitely, like {@code Iterables.cycle}. A random-access list
+     * is read in place, any other one is copied once.
+     */
+    public static <T> Stream<T> cycle(List<? extends T> list) {
+        List<? extends T> elements = randomAccess(list);
+        return StreamSupport.stream(new CycleSpliterator<T>(elements, 0, elements.isEmpty() ? 0 : Long.MAX_VALUE,
+                0, false), false);
+    }
+
+    /**
+     * The first {@code size} elements of {@link #cycle(List)}. Unlike {@code cycle(list).limit(size)},
+     * the stream is {@code SIZED} and splits evenly, each part starting at its own position in the list.
+     */
+    public static <T> Stream<T> cycle(List<? extends T> list, long size) {
+        Preconditions.checkArgument(size >= 0, "Size should be non-negative, got %s", size);
+        List<? extends T> elements = randomAccess(list);
+        return StreamSupport.stream(new CycleSpliterator<T>(elements, 0, elements.isEmpty() ? 0 : size, 0, true), false);
+    }
+
+    /**
+     * The first {@code size} elements of {@link #cycle(List)} as an array. The list is copied once,
+     * then the array doubles its filled prefix with {@link System#arraycopy} until it's full.
+     */
+    public static <T> T[] cycleToArray(List<? extends T> list, int size, IntFunction<T[]> generator) {
+        Preconditions.checkArgument(size >= 0, "Size should be non-negative, got %s", size);
+        if (list.isEmpty()) {
+            return generator.apply(0);
+        }
+        T[] array = generator.apply(size);
+        Object[] period = list.toArray();
+        int filled = Math.min(period.length, size);
+        System.arraycopy(period, 0, array, 0, filled);
+        while (filled < size) {
+            int copied = Math.min(filled, size - filled);
+            System.arraycopy(array, 0, array, filled, copied);
+            filled += copied;
+        }
+        return array;
+    }
+
+    private static <T> List<? extends T> randomAccess(List<? extends T> list) {
+        return list instanceof RandomAccess ? list : new ArrayList<>(list);
+    }
+
+    private static long sizeThreshold(Spliterator<?> spliterator) {
+        long size = spliterator.estimateSize();
+        return Math.max(size / (ForkJoinPool.getCommonPoolParallelism() << 2), 1);
     }
 
     public record ElementIndex<T>(int index, T element) {
     }
+
+    /**
+     * Assigns indices to the elements of the source spliterator.
+     * <p>
+     * A sub-sized source is split by the source itself, the prefix takes the current index and
+     * the rest continues from the index after the prefix. Any other source is split by copying
+     * a batch of elements to an array, like {@link Spliterators#spliteratorUnknownSize} does.
+     */
+    static class IndexedSpliterator<T> implements Spliterator<ElementIndex<T>> {
+
+        private static final int BATCH_UNIT = 1 << 10;
+        private static final int MAX_BATCH = 1 << 25;
+
+        private final Spliterator<? extends T> source;
+        private int index;
+        private int batch;
+
+        IndexedSpliterator(Spliterator<? extends T> source, int index) {
+            this.source = source;
+            this.index = index;
+        }
+
+        void forEachIndexed(ObjIntConsumer<? super T> action) {
+            source.forEachRemaining(e -> action.accept(e, nextIndex()));
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ElementIndex<T>> action) {
+            return source.tryAdvance(e -> action.accept(new ElementIndex<>(nextIndex(), e)));
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ElementIndex<T>> action) {
+            source.forEachRemaining(e -> action.accept(new ElementIndex<>(nextIndex(), e)));
+        }
+
+        /**
+         * Wraps past {@code Integer.MAX_VALUE} to a negative index, which is rejected on the next element
+         */
+        private int nextIndex() {
+            if (index < 0) {
+                throw new ArithmeticException("Stream has more than " + Integer.MAX_VALUE + " elements");
+            }
+            return index++;
+        }
+
+        @Override
+        public IndexedSpliterator<T> trySplit() {
+            if (source.hasCharacteristics(SUBSIZED)) {
+                Spliterator<? extends T> prefix = source.trySplit();
+                if (prefix == null) {
+                    return null;
+                }
+                IndexedSpliterator<T> split = new IndexedSpliterator<>(prefix, index);
+                index = Math.addExact(index, Math.toIntExact(prefix.getExactSizeIfKnown()));
+                return split;
+            }
+            return splitBatch();
+        }
+
+        private IndexedSpliterator<T> splitBatch() {
+            long size = source.estimateSize();
+            if (size <= 1) {
+                return null;
+            }
+            int n = (int) Math.min(Math.min(batch + BATCH_UNIT, MAX_BATCH), size);
+            Object[] elements = new Object[n];
+            Object[] holder = new Object[1];
+            Consumer<T> take = e -> holder[0] = e;
+            int count = 0;
+            while (count < n && source.tryAdvance(take)) {
+                elements[count++] = holder[0];
+            }
+            if (count == 0) {
+                return null;
+            }
+            batch = count;
+            @SuppressWarnings("unchecked")
+            Spliterator<T> prefix = (Spliterator<T>) Spliterators.spliterator(elements, 0, count,
+                    source.characteristics() & ~CONCURRENT);
+            IndexedSpliterator<T> split = new IndexedSpliterator<>(prefix, index);
+            index = Math.addExact(index, count);
+            return split;
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return (source.characteristics() & ~SORTED) | DISTINCT | NONNULL;
+        }
+    }
+
+    /**
+     * Pulls chunks of elements from the source spliterator.
+     * <p>
+     * When the source splits off a prefix which doesn't end on a chunk boundary, the elements
+     * missing for the last chunk of the prefix are taken from the head of the source. They are
+     * handed out after the elements of the prefix, so both parts start and end on a boundary.
+     */
+    static class ChunkedSpliterator<T> implements Spliterator<List<T>> {
+
+        private final Spliterator<? extends T> source;
+        private final int size;
+        private final boolean padded;
+        private final T filler;
+        private final List<T> tail;
+
+        ChunkedSpliterator(Spliterator<? extends T> source, int size, boolean padded, T filler) {
+            this(source, size, padded, filler, new ArrayList<>(0));
+        }
+
+        private ChunkedSpliterator(Spliterator<? extends T> source, int size, boolean padded, T filler,
+                                   List<T> tail) {
+            this.source = source;
+            this.size = size;
+            this.padded = padded;
+            this.filler = filler;
+            this.tail = tail;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<T>> action) {
+            List<T> chunk = new ArrayList<>(size);
+            fill(chunk, size);
+            if (chunk.size() < size && !tail.isEmpty()) {
+                chunk.addAll(tail);
+                tail.clear();
+            }
+            if (chunk.isEmpty()) {
+                return false;
+            }
+            while (padded && chunk.size() < size) {
+                chunk.add(filler);
+            }
+            action.accept(chunk);
+            return true;
+        }
+
+        @Override
+        public ChunkedSpliterator<T> trySplit() {
+            if (!source.hasCharacteristics(SUBSIZED) || source.estimateSize() <= size) {
+                return null;
+            }
+            Spliterator<? extends T> prefix = source.trySplit();
+            if (prefix == null) {
+                return null;
+            }
+            int remainder = (int) (prefix.getExactSizeIfKnown() % size);
+            List<T> prefixTail = new ArrayList<>(remainder == 0 ? 0 : size - remainder);
+            if (remainder != 0) {
+                fill(prefixTail, size - remainder);
+            }
+            return new ChunkedSpliterator<>(prefix, size, padded, filler, prefixTail);
+        }
+
+        private void fill(List<T> target, int count) {
+            boolean advanced = true;
+            while (advanced && target.size() < count) {
+                advanced = source.tryAdvance(target::add);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            long elements = source.estimateSize();
+            if (elements == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            return (elements + tail.size() + size - 1) / size;
+        }
+
+        @Override
+        public int characteristics() {
+            return (source.characteristics() & (ORDERED | SIZED | SUBSIZED | IMMUTABLE | CONCURRENT)) | NONNULL;
+        }
+    }
+
+    /**
+     * Covers the positions from {@code from} inclusive to {@code to} exclusive of the cycle. The index in
+     * the list is computed with a remainder once per split and then wraps around with a comparison.
+     */
+    static class CycleSpliterator<T> implements Spliterator<T> {
+
+        private final List<? extends T> list;
+        private long from;
+        private final long to;
+        private int index;
+        private final boolean sized;
+
+        CycleSpliterator(List<? extends T> list, long from, long to, int index, boolean sized) {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+            this.index = index;
+            this.sized = sized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (from >= to) {
+                return false;
+            }
+            action.accept(list.get(index));
+            from++;
+            if (++index == list.size()) {
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            int period = list.size();
+            for (; from < to; from++) {
+                action.accept(list.get(index));
+                if (++index == period) {
+                    index = 0;
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            long half = (to - from) >>> 1;
+            if (half == 0) {
+                return null;
+            }
+            CycleSpliterator<T> prefix = new CycleSpliterator<>(list, from, from + half, index, sized);
+            from += half;
+            index = (int) ((index + half) % list.size());
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return sized ? ORDERED | SIZED | SUBSIZED : ORDERED;
+        }
+    }
+
+    /**
+     * The first two elements seen by any thread, {@code multiple} stops everyone once there's a second one
+     */
+    private static class FindOnlyState implements Consumer<Object> {
+
+        private static final Object NO_ELEMENT = new Object();
+
+        private final AtomicReference<Object> first = new AtomicReference<>(NO_ELEMENT);
+        private final AtomicReference<Object> second = new AtomicReference<>(NO_ELEMENT);
+        volatile boolean multiple;
+
+        @Override
+        public void accept(Object element) {
+            if (!first.compareAndSet(NO_ELEMENT, element)) {
+                second.compareAndSet(NO_ELEMENT, element);
+                multiple = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> Only<T> result() {
+            if (first.get() == NO_ELEMENT) {
+                return new None<>();
+            }
+            if (!multiple) {
+                return new One<>((T) first.get());
+            }
+            return new Multiple<>((T) first.get(), (T) second.get());
+        }
+    }
+
+    private static class FindOnlyTask<T> extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Spliterator<? extends T> spliterator;
+        private final transient FindOnlyState state;
+        private final long sizeThreshold;
+
+        FindOnlyTask(FindOnlyTask<T> parent, Spliterator<? extends T> spliterator, FindOnlyState state,
+                     long sizeThreshold) {
+            super(parent);
+            this.spliterator = spliterator;
+            this.state = state;
+            this.sizeThreshold = sizeThreshold;
+        }
+
+        @Override
+        public void compute() {
+            Spliterator<? extends T> split;
+            while (!state.multiple && spliterator.estimateSize() > sizeThreshold && (split = spliterator.trySplit()) != null) {
+                addToPendingCount(1);
+                new FindOnlyTask<T>(this, split, state, sizeThreshold).fork();
+            }
+            while (!state.multiple && spliterator.tryAdvance(state)) {
+            }
+            tryComplete();
+        }
+    }
+
+    private static class ForEachIndexedTask<T> extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient IndexedSpliterator<T> spliterator;
+        private final transient ObjIntConsumer<? super T> action;
+        private final long sizeThreshold;
+
+        ForEachIndexedTask(ForEachIndexedTask<T> parent, IndexedSpliterator<T> spliterator,
+                           ObjIntConsumer<? super T> action, long sizeThreshold) {
+            super(parent);
+            this.spliterator = spliterator;
+            this.action = action;
+            this.sizeThreshold = sizeThreshold;
+        }
+
+        @Override
+        public void compute() {
+            IndexedSpliterator<T> split;
+            while (spliterator.estimateSize() > sizeThreshold && (split = spliterator.trySplit()) != null) {
+                addToPendingCount(1);
+                new ForEachIndexedTask<>(this, split, action, sizeThreshold).fork();
+            }
+            spliterator.forEachIndexed(action);
+            tryComplete();
+        }
+    }
 }
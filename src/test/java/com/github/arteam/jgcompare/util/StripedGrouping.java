@@ -0,0 +1,188 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Groups elements in parallel without merging per-thread maps and without contending on a shared one.
+ * <p>
+ * Keys are spread by hash over a fixed number of stripes. The elements are first classified chunk by
+ * chunk in parallel and their indices are sorted by stripe with a parallel counting sort. Then every
+ * stripe is grouped by a single worker into its own map. Stripes own disjoint sets of keys, so the
+ * result is just a view over the stripe maps. Within a key, the elements keep the encounter order.
+ */
+public class StripedGrouping {
+
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    private StripedGrouping() {
+    }
+
+    /**
+     * Groups like {@code Collectors.groupingBy(classifier)} does. The resulting map is unmodifiable
+     * and iterates the keys in no particular order.
+     */
+    public static <T, K> Map<K, List<T>> groupingBy(Stream<? extends T> stream, Function<? super T, ? extends K> classifier) {
+        return new Grouping<T, K>(stream.toArray(), classifier).group();
+    }
+
+    /**
+     * Groups like {@code Multimaps.index(elements, classifier)} does, but the keys
+     * are in no particular order.
+     */
+    public static <T, K> ImmutableListMultimap<K, T> index(Stream<? extends T> stream, Function<? super T, ? extends K> classifier) {
+        StripedMap<K, T> map = new Grouping<T, K>(stream.toArray(), classifier).group();
+        ImmutableListMultimap.Builder<K, T> builder = ImmutableListMultimap.builder();
+        for (Map<K, List<T>> stripe : map.stripes) {
+            stripe.forEach(builder::putAll);
+        }
+        return builder.build();
+    }
+
+    private static class Grouping<T, K> {
+
+        private final Object[] elements;
+        private final Function<? super T, ? extends K> classifier;
+        private final Object[] keys;
+        private final byte[] elementStripes;
+        private final int stripeShift;
+        private final int stripeCount;
+        private final int chunkSize;
+        private final int chunkCount;
+
+        Grouping(Object[] elements, Function<? super T, ? extends K> classifier) {
+            this.elements = elements;
+            this.classifier = classifier;
+            this.keys = new Object[elements.length];
+            this.elementStripes = new byte[elements.length];
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            int chunks = Math.max(1, Math.min(elements.length / MIN_CHUNK_SIZE, parallelism * 4));
+            this.chunkSize = (elements.length + chunks - 1) / chunks;
+            this.chunkCount = chunkSize == 0 ? 0 : (elements.length + chunkSize - 1) / chunkSize;
+            // Stripes are indexed by the top bits of the hash, from 1 to 128 of them
+            int stripeBits = chunks == 1 ? 0 : Math.min(7, 32 - Integer.numberOfLeadingZeros(parallelism * 4 - 1));
+            this.stripeCount = 1 << stripeBits;
+            this.stripeShift = 32 - stripeBits;
+        }
+
+        StripedMap<K, T> group() {
+            int[][] counts = new int[chunkCount][stripeCount];
+            IntStream.range(0, chunkCount).parallel().forEach(chunk -> classify(chunk, counts[chunk]));
+
+            // Turn the counts into the starting positions of every (stripe, chunk) pair
+            int[] stripeStarts = new int[stripeCount + 1];
+            int position = 0;
+            for (int stripe = 0; stripe < stripeCount; stripe++) {
+                stripeStarts[stripe] = position;
+                for (int chunk = 0; chunk < chunkCount; chunk++) {
+                    int count = counts[chunk][stripe];
+                    counts[chunk][stripe] = position;
+                    position += count;
+                }
+            }
+            stripeStarts[stripeCount] = position;
+
+            int[] order = new int[elements.length];
+            IntStream.range(0, chunkCount).parallel().forEach(chunk -> scatter(chunk, counts[chunk], order));
+
+            List<Map<K, List<T>>> stripes = IntStream.range(0, stripeCount).parallel()
+                    .mapToObj(stripe -> groupStripe(order, stripeStarts[stripe], stripeStarts[stripe + 1]))
+                    .toList();
+            return new StripedMap<>(stripes, stripeShift);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void classify(int chunk, int[] stripeCounts) {
+            int end = Math.min(elements.length, (chunk + 1) * chunkSize);
+            for (int i = chunk * chunkSize; i < end; i++) {
+                Object key = classifier.apply((T) elements[i]);
+                keys[i] = key;
+                int stripe = stripe(key, stripeShift);
+                elementStripes[i] = (byte) stripe;
+                stripeCounts[stripe]++;
+            }
+        }
+
+        private void scatter(int chunk, int[] positions, int[] order) {
+            int end = Math.min(elements.length, (chunk + 1) * chunkSize);
+            for (int i = chunk * chunkSize; i < end; i++) {
+                order[positions[elementStripes[i]]++] = i;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<K, List<T>> groupStripe(int[] order, int from, int to) {
+            Map<K, List<T>> stripe = new HashMap<>();
+            for (int i = from; i < to; i++) {
+                int index = order[i];
+                stripe.computeIfAbsent((K) keys[index], k -> new ArrayList<>()).add((T) elements[index]);
+            }
+            return stripe;
+        }
+    }
+
+    /**
+     * Uses other bits of the hash than the stripe maps use for their buckets
+     */
+    private static int stripe(Object key, int stripeShift) {
+        return stripeShift == 32 ? 0 : (key.hashCode() * 0x9E3779B9) >>> stripeShift;
+    }
+
+    private static class StripedMap<K, V> extends AbstractMap<K, List<V>> {
+
+        private final List<Map<K, List<V>>> stripes;
+        private final int stripeShift;
+        private final int size;
+
+        StripedMap(List<Map<K, List<V>>> stripes, int stripeShift) {
+            this.stripes = stripes;
+            this.stripeShift = stripeShift;
+            this.size = stripes.stream().mapToInt(Map::size).sum();
+        }
+
+        @Override
+        public List<V> get(Object key) {
+            return key == null ? null : stripes.get(stripe(key, stripeShift)).get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && stripes.get(stripe(key, stripeShift)).containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<K, List<V>>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, List<V>>> iterator() {
+                    return Iterators.unmodifiableIterator(Iterators.concat(stripes.stream()
+                            .map(stripe -> stripe.entrySet().iterator())
+                            .iterator()));
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
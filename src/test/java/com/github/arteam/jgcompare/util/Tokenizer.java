@@ -0,0 +1,152 @@
+package com.github.arteam.jgcompare.util;
+
+import com.google.common.base.CharMatcher;
+
+import java.nio.CharBuffer;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits text on a separator like {@code Splitter.on(separator)}, but as a stream stage
+ * which doesn't copy the text.
+ * <p>
+ * {@link #split} emits read-only {@link CharBuffer} views of the input instead of new strings,
+ * {@link #splitToInts} parses the tokens in place without creating them at all. Both are meant
+ * to go to {@code flatMap} and {@code flatMapToInt}. As with {@code Splitter}, a tokenizer is
+ * immutable and should be created once and reused. Empty tokens between adjacent separators
+ * are kept, just as {@code Splitter} keeps them.
+ */
+public class Tokenizer {
+
+    private final CharMatcher separator;
+
+    private Tokenizer(CharMatcher separator) {
+        this.separator = separator;
+    }
+
+    public static Tokenizer on(char separator) {
+        return new Tokenizer(CharMatcher.is(separator));
+    }
+
+    public static Tokenizer on(CharMatcher separator) {
+        return new Tokenizer(separator.precomputed());
+    }
+
+    /**
+     * @return views of the tokens of the text
+     */
+    public Stream<CharSequence> split(CharSequence text) {
+        return StreamSupport.stream(new TokenSpliterator(text), false);
+    }
+
+    /**
+     * Parses every token of the text as a decimal int, like {@link Integer#parseInt(String)} does.
+     *
+     * @throws NumberFormatException on traversal if a token isn't a valid int
+     */
+    public IntStream splitToInts(CharSequence text) {
+        return StreamSupport.intStream(new IntTokenSpliterator(text), false);
+    }
+
+    private static int parseInt(CharSequence text, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("For input string: \"\"");
+        }
+        int i = start;
+        boolean negative = text.charAt(i) == '-';
+        if (negative || text.charAt(i) == '+') {
+            if (++i == end) {
+                throw numberFormatException(text, start, end);
+            }
+        }
+        // Accumulate negatively to fit Integer.MIN_VALUE
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int multiplyLimit = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0 || result < multiplyLimit) {
+                throw numberFormatException(text, start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(text, start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static NumberFormatException numberFormatException(CharSequence text, int start, int end) {
+        return new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+    }
+
+    /**
+     * Finds the bounds of the next token. The position goes past the end of the text
+     * when the last token has been found.
+     */
+    private class Cursor {
+
+        final CharSequence text;
+        int position;
+        int tokenStart;
+        int tokenEnd;
+
+        Cursor(CharSequence text) {
+            this.text = text;
+        }
+
+        boolean next() {
+            if (position > text.length()) {
+                return false;
+            }
+            tokenStart = position;
+            int separatorIndex = separator.indexIn(text, position);
+            tokenEnd = separatorIndex < 0 ? text.length() : separatorIndex;
+            position = tokenEnd + 1;
+            return true;
+        }
+    }
+
+    private class TokenSpliterator extends Spliterators.AbstractSpliterator<CharSequence> {
+
+        private final Cursor cursor;
+
+        TokenSpliterator(CharSequence text) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+            this.cursor = new Cursor(text);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CharSequence> action) {
+            if (!cursor.next()) {
+                return false;
+            }
+            action.accept(CharBuffer.wrap(cursor.text, cursor.tokenStart, cursor.tokenEnd));
+            return true;
+        }
+    }
+
+    private class IntTokenSpliterator extends Spliterators.AbstractIntSpliterator {
+
+        private final Cursor cursor;
+
+        IntTokenSpliterator(CharSequence text) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+            this.cursor = new Cursor(text);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (!cursor.next()) {
+                return false;
+            }
+            action.accept(parseInt(cursor.text, cursor.tokenStart, cursor.tokenEnd));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.github.arteam.jgcompare.util.metrics;
+
+import com.google.common.collect.ForwardingCollection;
+import com.google.common.collect.ForwardingIterator;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Opt-in metrics of stream stages, collectors and Guava views, grouped by a stage name.
+ * <p>
+ * The wrappers are decided when a pipeline is assembled: with the instrumentation turned off,
+ * {@link #filter}, {@link #map}, {@link #collector} and {@link #view} return their argument as is,
+ * so a disabled pipeline runs exactly the code it would run without them. The instrumentation is
+ * off unless the {@code jgcompare.instrumentation} system property is {@code true} or it's turned on
+ * with {@link #setEnabled}.
+ * <p>
+ * Filters and maps count the elements in and out of a stage. Collectors and {@link #time} runs also record
+ * the duration into a {@link LatencyHistogram} and the bytes allocated by the calling thread, as reported
+ * by {@code com.sun.management.ThreadMXBean}. Every timed run emits a JFR {@code StageRun} event and
+ * is passed to the registered {@link MetricsSink}s.
+ */
+public class Instrumentation {
+
+    private static final Map<String, StageMetrics> STAGES = new ConcurrentHashMap<>();
+    private static final List<MetricsSink> SINKS = new CopyOnWriteArrayList<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static volatile boolean enabled = Boolean.getBoolean("jgcompare.instrumentation");
+
+    static {
+        ServiceLoader.load(MetricsSink.class).forEach(SINKS::add);
+    }
+
+    private Instrumentation() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Affects the pipelines assembled afterwards, assembled ones keep their wrappers or lack of them
+     */
+    public static void setEnabled(boolean enabled) {
+        Instrumentation.enabled = enabled;
+    }
+
+    public static void addSink(MetricsSink sink) {
+        SINKS.add(sink);
+    }
+
+    public static void removeSink(MetricsSink sink) {
+        SINKS.remove(sink);
+    }
+
+    /**
+     * @return the metrics of the stage, created on the first call
+     */
+    public static StageMetrics metrics(String stage) {
+        return STAGES.computeIfAbsent(stage, StageMetrics::new);
+    }
+
+    public static Collection<StageMetrics> stages() {
+        return ImmutableList.copyOf(STAGES.values());
+    }
+
+    /**
+     * Passes the metrics of all the stages to the sinks
+     */
+    public static void report() {
+        Collection<StageMetrics> stages = stages();
+        SINKS.forEach(sink -> sink.onReport(stages));
+    }
+
+    /**
+     * Forgets the metrics of all the stages
+     */
+    public static void reset() {
+        STAGES.clear();
+    }
+
+    /**
+     * Counts the elements tested by the predicate and the ones which passed
+     */
+    public static <T> Predicate<T> filter(String stage, Predicate<T> predicate) {
+        if (!enabled) {
+            return predicate;
+        }
+        StageMetrics metrics = metrics(stage);
+        return element -> {
+            metrics.elementsIn.increment();
+            boolean passed = predicate.test(element);
+            if (passed) {
+                metrics.elementsOut.increment();
+            }
+            return passed;
+        };
+    }
+
+    /**
+     * Counts the elements mapped by the function
+     */
+    public static <T, R> Function<T, R> map(String stage, Function<T, R> function) {
+        if (!enabled) {
+            return function;
+        }
+        StageMetrics metrics = metrics(stage);
+        return element -> {
+            metrics.elementsIn.increment();
+            R result = function.apply(element);
+            metrics.elementsOut.increment();
+            return result;
+        };
+    }
+
+    /**
+     * Counts the accumulated elements and times the collection, from the creation of the first container
+     * to the end of the finisher. In parallel, the allocations of the thread which finishes are recorded only.
+     * A concurrent collector loses its {@code CONCURRENT} characteristic, so it's combined like a regular one.
+     */
+    public static <T, A, R> Collector<T, ?, R> collector(String stage, Collector<T, A, R> collector) {
+        if (!enabled) {
+            return collector;
+        }
+        StageMetrics metrics = metrics(stage);
+        Supplier<A> supplier = collector.supplier();
+        BiConsumer<A, T> accumulator = collector.accumulator();
+        BinaryOperator<A> combiner = collector.combiner();
+        Function<A, R> finisher = collector.finisher();
+        return Collector.of(
+                () -> new Timed<>(supplier.get()),
+                (timed, element) -> {
+                    timed.elements++;
+                    accumulator.accept(timed.container, element);
+                },
+                (left, right) -> left.merge(combiner.apply(left.container, right.container), right),
+                timed -> {
+                    R result = finisher.apply(timed.container);
+                    record(metrics, timed.event, System.nanoTime() - timed.startNanos,
+                            allocatedBytes() - timed.startAllocatedBytes, timed.elements, timed.elements);
+                    return result;
+                },
+                // Every thread should accumulate into its own container, the counts aren't thread-safe
+                collector.characteristics().stream()
+                        .filter(c -> c != Collector.Characteristics.IDENTITY_FINISH
+                                && c != Collector.Characteristics.CONCURRENT)
+                        .toArray(Collector.Characteristics[]::new));
+    }
+
+    /**
+     * Runs a terminal operation, records its duration and the bytes allocated by the calling thread
+     */
+    public static <R> R time(String stage, Supplier<R> operation) {
+        if (!enabled) {
+            return operation.get();
+        }
+        StageMetrics metrics = metrics(stage);
+        StageEvent event = new StageEvent();
+        event.begin();
+        long startAllocatedBytes = allocatedBytes();
+        long start = System.nanoTime();
+        R result = operation.get();
+        record(metrics, event, System.nanoTime() - start, allocatedBytes() - startAllocatedBytes, 0, 0);
+        return result;
+    }
+
+    /**
+     * Counts the elements produced by iterating a lazy view, like {@code Iterables.filter}.
+     * A collection stays a collection, so its {@code size()} and {@code contains()} keep their cost.
+     */
+    public static <T> Iterable<T> view(String stage, Iterable<T> view) {
+        if (!enabled) {
+            return view;
+        }
+        StageMetrics metrics = metrics(stage);
+        if (view instanceof Collection<T> collection) {
+            return new ForwardingCollection<>() {
+                @Override
+                protected Collection<T> delegate() {
+                    return collection;
+                }
+
+                @Override
+                public Iterator<T> iterator() {
+                    return counting(metrics, collection.iterator());
+                }
+
+                @Override
+                public Object[] toArray() {
+                    Object[] elements = super.toArray();
+                    metrics.elementsOut.add(elements.length);
+                    return elements;
+                }
+            };
+        }
+        return () -> counting(metrics, view.iterator());
+    }
+
+    private static <T> Iterator<T> counting(StageMetrics metrics, Iterator<T> iterator) {
+        return new ForwardingIterator<>() {
+            @Override
+            protected Iterator<T> delegate() {
+                return iterator;
+            }
+
+            @Override
+            public T next() {
+                T next = super.next();
+                metrics.elementsOut.increment();
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Counts the lookups of a map view, like {@code Maps.filterKeys}, and the ones which found a value
+     */
+    public static <K, V> Map<K, V> view(String stage, Map<K, V> view) {
+        if (!enabled) {
+            return view;
+        }
+        StageMetrics metrics = metrics(stage);
+        return new ForwardingMap<>() {
+            @Override
+            protected Map<K, V> delegate() {
+                return view;
+            }
+
+            @Override
+            public V get(Object key) {
+                metrics.elementsIn.increment();
+                V value = super.get(key);
+                if (value != null) {
+                    metrics.elementsOut.increment();
+                }
+                return value;
+            }
+        };
+    }
+
+    private static void record(StageMetrics metrics, StageEvent event, long durationNanos, long allocatedBytes,
+                               long elementsIn, long elementsOut) {
+        metrics.elementsIn.add(elementsIn);
+        metrics.elementsOut.add(elementsOut);
+        metrics.latency().record(durationNanos);
+        metrics.allocatedBytes.add(Math.max(0, allocatedBytes));
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = metrics.stage();
+            event.elements = elementsIn;
+            event.allocatedBytes = allocatedBytes;
+            event.commit();
+        }
+        for (MetricsSink sink : SINKS) {
+            sink.onRun(metrics, durationNanos, allocatedBytes, elementsIn);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    /**
+     * A container of the wrapped collector with the start of the collection
+     */
+    private static class Timed<A> {
+
+        A container;
+        long elements;
+        final StageEvent event = new StageEvent();
+        long startNanos = System.nanoTime();
+        final long startAllocatedBytes = allocatedBytes();
+
+        Timed(A container) {
+            this.container = container;
+            event.begin();
+        }
+
+        Timed<A> merge(A merged, Timed<A> other) {
+            container = merged;
+            elements += other.elements;
+            startNanos = Math.min(startNanos, other.startNanos);
+            return this;
+        }
+    }
+}
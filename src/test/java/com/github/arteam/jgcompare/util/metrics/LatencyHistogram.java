@@ -0,0 +1,82 @@
+package com.github.arteam.jgcompare.util.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, like latencies in nanoseconds, in the manner of HdrHistogram.
+ * <p>
+ * Values below 16 have a bucket each. Above that every power of two is split into 16 linear buckets, so a
+ * value is known within 1/16 of itself, and the whole {@code long} range fits into 960 counters.
+ * Recording is a single atomic increment of the counter of the bucket.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long value) {
+        Preconditions.checkArgument(value >= 0, "Value should be non-negative, got %s", value);
+        counts.getAndIncrement(index(value));
+        totalCount.increment();
+        totalValue.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return totalCount.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0.0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * @return the lowest value of the bucket with the given percentile, from 0 to 100
+     */
+    public long valueAtPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile should be in [0, 100], got %s", percentile);
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return lowestValue(i);
+            }
+        }
+        return max();
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestValue(int index) {
+        int block = index >>> SUB_BUCKET_BITS;
+        int subBucket = index & (SUB_BUCKETS - 1);
+        return block == 0 ? subBucket : (long) (SUB_BUCKETS + subBucket) << (block - 1);
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.arteam.jgcompare.util.metrics;
+
+import java.util.Collection;
+
+/**
+ * Receives the metrics of instrumented stages, e.g. to forward them to a metrics library.
+ * <p>
+ * Sinks are registered with {@link Instrumentation#addSink} or found by {@link java.util.ServiceLoader}
+ * in {@code META-INF/services}. They are called on the thread which completed the run,
+ * so they should be quick.
+ */
+public interface MetricsSink {
+
+    /**
+     * Called after every timed run of a stage
+     */
+    default void onRun(StageMetrics stage, long durationNanos, long allocatedBytes, long elements) {
+    }
+
+    /**
+     * Called by {@link Instrumentation#report()} with all the stages
+     */
+    default void onReport(Collection<StageMetrics> stages) {
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.arteam.jgcompare.util.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event of a timed run of a stage, its duration is the duration of the run
+ */
+@Name("com.github.arteam.jgcompare.StageRun")
+@Label("Stage Run")
+@Category({"Java Application", "Pipelines"})
+@Description("A run of an instrumented stream pipeline or collector")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Elements")
+    long elements;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
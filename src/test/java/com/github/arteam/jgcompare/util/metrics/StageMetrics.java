@@ -0,0 +1,60 @@
+package com.github.arteam.jgcompare.util.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a named stage: how many elements came in and went out, how long the runs took
+ * and how much they allocated
+ */
+public class StageMetrics {
+
+    private final String stage;
+    final LongAdder elementsIn = new LongAdder();
+    final LongAdder elementsOut = new LongAdder();
+    final LongAdder allocatedBytes = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    StageMetrics(String stage) {
+        this.stage = stage;
+    }
+
+    public String stage() {
+        return stage;
+    }
+
+    public long elementsIn() {
+        return elementsIn.sum();
+    }
+
+    public long elementsOut() {
+        return elementsOut.sum();
+    }
+
+    /**
+     * @return the share of the elements which passed the stage, 1 if no elements have come in
+     */
+    public double selectivity() {
+        long in = elementsIn();
+        return in == 0 ? 1.0 : (double) elementsOut() / in;
+    }
+
+    /**
+     * @return the bytes allocated by the threads which ran the stage, 0 if the JVM doesn't track them
+     */
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return the durations of the runs in nanoseconds
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return stage + "{in=" + elementsIn() + ", out=" + elementsOut() + ", runs=" + latency.count()
+                + ", p99=" + latency.valueAtPercentile(99) + "ns, allocated=" + allocatedBytes() + "}";
+    }
+}